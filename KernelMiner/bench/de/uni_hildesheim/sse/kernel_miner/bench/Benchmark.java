@@ -0,0 +1,54 @@
+package de.uni_hildesheim.sse.kernel_miner.bench;
+
+/**
+ * A single micro-benchmark. {@link BenchmarkRunner} calls {@link #run()} repeatedly and measures the average
+ * time and allocated memory per call.
+ * 
+ * @author Adam Krafczyk
+ */
+public abstract class Benchmark {
+    
+    private String name;
+    
+    /**
+     * Creates a benchmark.
+     * 
+     * @param name The name of this benchmark. Used to select benchmarks and to compare results with a baseline.
+     */
+    protected Benchmark(String name) {
+        this.name = name;
+    }
+    
+    /**
+     * @return The name of this benchmark.
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Prepares the input data. Called once before the benchmark is warmed up; not measured.
+     * 
+     * @throws Exception If preparing the input data fails.
+     */
+    public void setUp() throws Exception {
+    }
+    
+    /**
+     * Releases the resources allocated in {@link #setUp()}. Called once after the benchmark is measured.
+     * 
+     * @throws Exception If releasing the resources fails.
+     */
+    public void tearDown() throws Exception {
+    }
+    
+    /**
+     * Executes one operation of this benchmark.
+     * 
+     * @return The result of the operation. Consumed by the runner, so that the JIT can't remove the operation.
+     * 
+     * @throws Exception If the operation fails; this aborts the benchmark.
+     */
+    public abstract Object run() throws Exception;
+    
+}
@@ -0,0 +1,192 @@
+package de.uni_hildesheim.sse.kernel_miner.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Runs {@link Benchmark}s. Each benchmark is first run for a warmup period, so that the JIT compiles the
+ * measured code. Then it is run for a number of measurement rounds of fixed length; each round yields the
+ * average time per operation.
+ * <p>
+ * If the JVM supports it (e.g. HotSpot), then the memory allocated by the measuring thread is recorded, too.
+ * This is the same value that the GC profiler of JMH reports as <code>gc.alloc.rate.norm</code>.
+ * </p>
+ * 
+ * @author Adam Krafczyk
+ */
+public class BenchmarkRunner {
+    
+    /**
+     * The measured values of a single benchmark.
+     */
+    public static class Result {
+        
+        private String name;
+        
+        private long operations;
+        
+        private double nanosPerOperation;
+        
+        private double error;
+        
+        private double bytesPerOperation;
+        
+        /**
+         * Creates a result.
+         * 
+         * @param name The name of the benchmark.
+         * @param operations The number of measured operations.
+         * @param nanosPerOperation The average duration of an operation, in nanoseconds.
+         * @param error The standard deviation of the rounds, in nanoseconds.
+         * @param bytesPerOperation The average number of bytes allocated per operation; -1 if unknown.
+         */
+        public Result(String name, long operations, double nanosPerOperation, double error,
+                double bytesPerOperation) {
+            this.name = name;
+            this.operations = operations;
+            this.nanosPerOperation = nanosPerOperation;
+            this.error = error;
+            this.bytesPerOperation = bytesPerOperation;
+        }
+        
+        /**
+         * @return The name of the benchmark.
+         */
+        public String getName() {
+            return name;
+        }
+        
+        /**
+         * @return The number of measured operations.
+         */
+        public long getOperations() {
+            return operations;
+        }
+        
+        /**
+         * @return The average duration of an operation, in nanoseconds.
+         */
+        public double getNanosPerOperation() {
+            return nanosPerOperation;
+        }
+        
+        /**
+         * @return The standard deviation of the rounds, in nanoseconds.
+         */
+        public double getError() {
+            return error;
+        }
+        
+        /**
+         * @return The average number of bytes allocated per operation; -1 if unknown.
+         */
+        public double getBytesPerOperation() {
+            return bytesPerOperation;
+        }
+        
+    }
+    
+    /**
+     * The results of the benchmarks are written to this, so that the JIT can't remove the benchmarked code as
+     * dead code.
+     */
+    private static volatile Object sink;
+    
+    private long warmupNanos;
+    
+    private long roundNanos;
+    
+    private int rounds;
+    
+    private com.sun.management.ThreadMXBean allocationBean;
+    
+    /**
+     * Creates a runner.
+     * 
+     * @param warmupMillis How long each benchmark is run before it is measured, in milliseconds.
+     * @param roundMillis The length of a single measurement round, in milliseconds.
+     * @param rounds The number of measurement rounds.
+     */
+    public BenchmarkRunner(long warmupMillis, long roundMillis, int rounds) {
+        this.warmupNanos = warmupMillis * 1000000;
+        this.roundNanos = roundMillis * 1000000;
+        this.rounds = Math.max(1, rounds);
+        
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported()) {
+                sunBean.setThreadAllocatedMemoryEnabled(true);
+                allocationBean = sunBean;
+            }
+        }
+    }
+    
+    /**
+     * Sets up, warms up, measures and tears down the given benchmark.
+     * 
+     * @param benchmark The benchmark to run.
+     * @return The measured values.
+     * 
+     * @throws Exception If the benchmark throws an exception.
+     */
+    public Result run(Benchmark benchmark) throws Exception {
+        benchmark.setUp();
+        try {
+            long end = System.nanoTime() + warmupNanos;
+            do {
+                sink = benchmark.run();
+            } while (System.nanoTime() < end);
+            
+            double[] roundResults = new double[rounds];
+            long totalOperations = 0;
+            long totalNanos = 0;
+            long allocatedBefore = getAllocatedBytes();
+            
+            for (int i = 0; i < rounds; i++) {
+                long operations = 0;
+                long start = System.nanoTime();
+                long now;
+                do {
+                    sink = benchmark.run();
+                    operations++;
+                    now = System.nanoTime();
+                } while (now - start < roundNanos);
+                
+                roundResults[i] = (double) (now - start) / operations;
+                totalOperations += operations;
+                totalNanos += now - start;
+            }
+            
+            long allocatedAfter = getAllocatedBytes();
+            double bytesPerOperation = -1;
+            if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+                bytesPerOperation = (double) (allocatedAfter - allocatedBefore) / totalOperations;
+            }
+            
+            double mean = (double) totalNanos / totalOperations;
+            double variance = 0;
+            for (double roundResult : roundResults) {
+                variance += (roundResult - mean) * (roundResult - mean);
+            }
+            double error = rounds > 1 ? Math.sqrt(variance / (rounds - 1)) : 0;
+            
+            return new Result(benchmark.getName(), totalOperations, mean, error, bytesPerOperation);
+            
+        } finally {
+            sink = null;
+            benchmark.tearDown();
+        }
+    }
+    
+    /**
+     * @return The number of bytes allocated by the current thread so far; -1 if the JVM does not support this.
+     */
+    private long getAllocatedBytes() {
+        if (allocationBean == null) {
+            return -1;
+        }
+        return allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    
+}
@@ -0,0 +1,521 @@
+package de.uni_hildesheim.sse.kernel_miner.bench;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import de.uni_hildesheim.sse.kernel_miner.code.typechef.TypeChefPresenceConditionGrammar;
+import de.uni_hildesheim.sse.kernel_miner.kbuild.KbuildMinerPcGrammar;
+import de.uni_hildesheim.sse.kernel_miner.util.Files;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.Conjunction;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.Disjunction;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.False;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.Formula;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.Negation;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.True;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.Variable;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.solver.SatSolver;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.solver.cnf.RecursiveReplacingCnfConverter;
+import de.uni_hildesheim.sse.kernel_miner.util.parser.CStyleBooleanGrammar;
+import de.uni_hildesheim.sse.kernel_miner.util.parser.Parser;
+import de.uni_hildesheim.sse.kernel_miner.util.parser.VariableCache;
+
+/**
+ * Benchmarks for the hot paths of the extraction: parsing presence conditions, converting formulas to CNF,
+ * loading DIMACS models and checking satisfiability. Must be run from the project directory, since the
+ * corpora are read from <code>testdata</code>:
+ * <ul>
+ *      <li>The presence conditions of KbuildMiner in <code>testdata/KbuildMinerTest/pcs.txt</code>.</li>
+ *      <li>The same presence conditions in the format of TypeChef (<code>definedEx(CONFIG_X)</code>).</li>
+ *      <li>The large formula in <code>testdata/ParserTest/huge.txt</code>.</li>
+ *      <li>Random formulas and random 3-CNF models of several sizes. A fixed seed is used, so that all runs
+ *      measure the same inputs.</li>
+ * </ul>
+ * <p>
+ * Usage: <code>KernelMinerBenchmarks [options] [filter...]</code>. Only benchmarks with a name that contains
+ * one of the filters are run; all if no filter is given. Options:
+ * <ul>
+ *      <li><code>-w &lt;ms&gt;</code>: The warmup time per benchmark (default 2000).</li>
+ *      <li><code>-r &lt;ms&gt;</code>: The length of a measurement round (default 1000).</li>
+ *      <li><code>-n &lt;rounds&gt;</code>: The number of measurement rounds (default 5).</li>
+ *      <li><code>-o &lt;file&gt;</code>: Writes the results to the given CSV file.</li>
+ *      <li><code>-b &lt;file&gt;</code>: Compares the results with a CSV file written by an earlier run.</li>
+ *      <li><code>-t &lt;percent&gt;</code>: With <code>-b</code>: Exits with status 1 if any benchmark got
+ *      slower by more than this (default 10).</li>
+ * </ul>
+ * </p>
+ * 
+ * @author Adam Krafczyk
+ */
+public class KernelMinerBenchmarks {
+    
+    private static final File TESTDATA = new File("testdata");
+    
+    private static final int[] FORMULA_SIZES = {10, 100, 1000};
+    
+    private static final int[] MODEL_SIZES = {1000, 10000, 100000};
+    
+    /**
+     * The number of variables in the model that the satisfiability checks run against.
+     */
+    private static final int SAT_MODEL_SIZE = 5000;
+    
+    /**
+     * The number of different random formulas per size; the benchmarks cycle through them.
+     */
+    private static final int NUM_FORMULAS = 64;
+    
+    /**
+     * @return All benchmarks.
+     */
+    public static List<Benchmark> createBenchmarks() {
+        List<Benchmark> benchmarks = new ArrayList<>();
+        
+        benchmarks.add(new Benchmark("parse.kbuildMinerPc") {
+            
+            private List<String> pcs;
+            
+            private Parser<Formula> parser;
+            
+            private int index;
+            
+            @Override
+            public void setUp() throws Exception {
+                pcs = readKbuildMinerPcs();
+                parser = new Parser<>(new KbuildMinerPcGrammar(new VariableCache()));
+            }
+            
+            @Override
+            public Object run() throws Exception {
+                index = (index + 1) % pcs.size();
+                return parser.parse(pcs.get(index));
+            }
+            
+        });
+        
+        benchmarks.add(new Benchmark("parse.typeChefPc") {
+            
+            private List<String> pcs;
+            
+            private Parser<Formula> parser;
+            
+            private int index;
+            
+            @Override
+            public void setUp() throws Exception {
+                Parser<Formula> kbuildParser = new Parser<>(new KbuildMinerPcGrammar(new VariableCache()));
+                pcs = new ArrayList<>();
+                for (String pc : readKbuildMinerPcs()) {
+                    pcs.add(toTypeChefPc(kbuildParser.parse(pc)));
+                }
+                parser = new Parser<>(new TypeChefPresenceConditionGrammar(new VariableCache()));
+            }
+            
+            @Override
+            public Object run() throws Exception {
+                index = (index + 1) % pcs.size();
+                return parser.parse(pcs.get(index));
+            }
+            
+        });
+        
+        benchmarks.add(new Benchmark("parse.huge") {
+            
+            private String formula;
+            
+            private Parser<Formula> parser;
+            
+            @Override
+            public void setUp() throws Exception {
+                formula = Files.readFile(new File(TESTDATA, "ParserTest/huge.txt"));
+                parser = new Parser<>(new CStyleBooleanGrammar(new VariableCache()));
+            }
+            
+            @Override
+            public Object run() throws Exception {
+                return parser.parse(formula);
+            }
+            
+        });
+        
+        benchmarks.add(new Benchmark("cnf.kbuildMinerPc") {
+            
+            private List<Formula> formulas;
+            
+            private int index;
+            
+            @Override
+            public void setUp() throws Exception {
+                Parser<Formula> parser = new Parser<>(new KbuildMinerPcGrammar(new VariableCache()));
+                formulas = new ArrayList<>();
+                for (String pc : readKbuildMinerPcs()) {
+                    formulas.add(parser.parse(pc));
+                }
+            }
+            
+            @Override
+            public Object run() throws Exception {
+                index = (index + 1) % formulas.size();
+                return new RecursiveReplacingCnfConverter().convertToCnf(formulas.get(index));
+            }
+            
+        });
+        
+        for (final int size : FORMULA_SIZES) {
+            benchmarks.add(new Benchmark("cnf.random-" + size) {
+                
+                private List<Formula> formulas;
+                
+                private int index;
+                
+                @Override
+                public void setUp() {
+                    formulas = createRandomFormulas(size, size);
+                }
+                
+                @Override
+                public Object run() throws Exception {
+                    index = (index + 1) % formulas.size();
+                    return new RecursiveReplacingCnfConverter().convertToCnf(formulas.get(index));
+                }
+                
+            });
+        }
+        
+        for (final int size : MODEL_SIZES) {
+            benchmarks.add(new Benchmark("dimacs.load-" + size) {
+                
+                private File model;
+                
+                @Override
+                public void setUp() throws IOException {
+                    model = createRandomModel(size);
+                }
+                
+                @Override
+                public Object run() throws Exception {
+                    return new SatSolver(model, "CONFIG_");
+                }
+                
+                @Override
+                public void tearDown() {
+                    model.delete();
+                }
+                
+            });
+        }
+        
+        for (final int size : FORMULA_SIZES) {
+            benchmarks.add(new SatBenchmark("sat.isSatisfiable-" + size, size, false));
+            benchmarks.add(new SatBenchmark("sat.isSatisfiableIncremental-" + size, size, true));
+        }
+        
+        return benchmarks;
+    }
+    
+    /**
+     * Checks random formulas against a random model.
+     */
+    private static class SatBenchmark extends Benchmark {
+        
+        private int size;
+        
+        private boolean incremental;
+        
+        private SatSolver solver;
+        
+        private List<Formula> formulas;
+        
+        private int index;
+        
+        public SatBenchmark(String name, int size, boolean incremental) {
+            super(name);
+            this.size = size;
+            this.incremental = incremental;
+        }
+        
+        @Override
+        public void setUp() throws Exception {
+            File model = createRandomModel(SAT_MODEL_SIZE);
+            try {
+                solver = new SatSolver(model, "CONFIG_");
+            } finally {
+                model.delete();
+            }
+            formulas = createRandomFormulas(size, SAT_MODEL_SIZE);
+        }
+        
+        @Override
+        public Object run() throws Exception {
+            index = (index + 1) % formulas.size();
+            if (incremental) {
+                return solver.isSatisfiableIncremental(formulas.get(index), true);
+            }
+            return solver.isSatisfiable(formulas.get(index), true);
+        }
+        
+    }
+    
+    /**
+     * @return The presence conditions in the KbuildMiner output in the test data.
+     * 
+     * @throws IOException If reading the file fails.
+     */
+    private static List<String> readKbuildMinerPcs() throws IOException {
+        List<String> result = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new FileReader(new File(TESTDATA, "KbuildMinerTest/pcs.txt")))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int index = line.indexOf(": ");
+                if (index != -1) {
+                    result.add(line.substring(index + 2));
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Converts the given formula into a presence condition as TypeChef writes it.
+     * 
+     * @param formula The formula to convert.
+     * @return The formula in the format of TypeChef.
+     */
+    private static String toTypeChefPc(Formula formula) {
+        if (formula instanceof Variable) {
+            return "definedEx(" + ((Variable) formula).getName() + ")";
+        } else if (formula instanceof Negation) {
+            return "!" + toTypeChefPc(((Negation) formula).getFormula());
+        } else if (formula instanceof Conjunction) {
+            Conjunction conjunction = (Conjunction) formula;
+            return "(" + toTypeChefPc(conjunction.getLeft()) + " && " + toTypeChefPc(conjunction.getRight()) + ")";
+        } else if (formula instanceof Disjunction) {
+            Disjunction disjunction = (Disjunction) formula;
+            return "(" + toTypeChefPc(disjunction.getLeft()) + " || " + toTypeChefPc(disjunction.getRight()) + ")";
+        } else if (formula instanceof True) {
+            return "1";
+        } else if (formula instanceof False) {
+            return "0";
+        }
+        throw new IllegalArgumentException("Unknown formula: " + formula);
+    }
+    
+    /**
+     * Creates {@link #NUM_FORMULAS} random formulas.
+     * 
+     * @param size The number of variable occurrences in each formula.
+     * @param numVariables The number of different variables; they are called <code>CONFIG_V1</code> to
+     *      <code>CONFIG_V&lt;numVariables&gt;</code>, like the variables of {@link #createRandomModel(int)}.
+     * @return The random formulas.
+     */
+    private static List<Formula> createRandomFormulas(int size, int numVariables) {
+        Random random = new Random(size);
+        Variable[] variables = new Variable[numVariables];
+        for (int i = 0; i < numVariables; i++) {
+            variables[i] = new Variable("CONFIG_V" + (i + 1));
+        }
+        
+        List<Formula> result = new ArrayList<>(NUM_FORMULAS);
+        for (int i = 0; i < NUM_FORMULAS; i++) {
+            result.add(createRandomFormula(random, size, variables));
+        }
+        return result;
+    }
+    
+    private static Formula createRandomFormula(Random random, int size, Variable[] variables) {
+        Formula result;
+        if (size <= 1) {
+            result = variables[random.nextInt(variables.length)];
+        } else {
+            int leftSize = 1 + random.nextInt(size - 1);
+            Formula left = createRandomFormula(random, leftSize, variables);
+            Formula right = createRandomFormula(random, size - leftSize, variables);
+            result = random.nextBoolean() ? new Conjunction(left, right) : new Disjunction(left, right);
+        }
+        if (random.nextInt(4) == 0) {
+            result = new Negation(result);
+        }
+        return result;
+    }
+    
+    /**
+     * Writes a random 3-CNF model to a temporary file. The model has two clauses per variable, so it is well
+     * below the satisfiability threshold and (almost certainly) satisfiable.
+     * 
+     * @param numVariables The number of variables; they are called <code>V1</code> to
+     *      <code>V&lt;numVariables&gt;</code>.
+     * @return The DIMACS file.
+     * 
+     * @throws IOException If writing the file fails.
+     */
+    private static File createRandomModel(int numVariables) throws IOException {
+        Random random = new Random(numVariables);
+        int numClauses = 2 * numVariables;
+        
+        File result = File.createTempFile("benchmark", ".dimacs");
+        try (Writer out = new BufferedWriter(new FileWriter(result))) {
+            for (int i = 1; i <= numVariables; i++) {
+                out.write("c " + i + " V" + i + "\n");
+            }
+            out.write("p cnf " + numVariables + " " + numClauses + "\n");
+            for (int i = 0; i < numClauses; i++) {
+                for (int j = 0; j < 3; j++) {
+                    int variable = 1 + random.nextInt(numVariables);
+                    out.write((random.nextBoolean() ? variable : -variable) + " ");
+                }
+                out.write("0\n");
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Runs the benchmarks.
+     * 
+     * @param args The command line arguments; see the class documentation.
+     * 
+     * @throws Exception If a benchmark fails.
+     */
+    public static void main(String[] args) throws Exception {
+        long warmup = 2000;
+        long round = 1000;
+        int rounds = 5;
+        File output = null;
+        File baseline = null;
+        double threshold = 10;
+        List<String> filters = new ArrayList<>();
+        
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+            case "-w":
+                warmup = Long.parseLong(args[++i]);
+                break;
+            case "-r":
+                round = Long.parseLong(args[++i]);
+                break;
+            case "-n":
+                rounds = Integer.parseInt(args[++i]);
+                break;
+            case "-o":
+                output = new File(args[++i]);
+                break;
+            case "-b":
+                baseline = new File(args[++i]);
+                break;
+            case "-t":
+                threshold = Double.parseDouble(args[++i]);
+                break;
+            default:
+                filters.add(args[i]);
+                break;
+            }
+        }
+        
+        Map<String, Double> baselineResults = new HashMap<>();
+        if (baseline != null) {
+            baselineResults = readResults(baseline);
+        }
+        
+        BenchmarkRunner runner = new BenchmarkRunner(warmup, round, rounds);
+        List<BenchmarkRunner.Result> results = new ArrayList<>();
+        boolean regression = false;
+        
+        System.out.println(String.format(Locale.ROOT, "%-36s %14s %10s %14s %10s",
+                "Benchmark", "ns/op", "error", "B/op", "change"));
+        for (Benchmark benchmark : createBenchmarks()) {
+            if (!matches(benchmark.getName(), filters)) {
+                continue;
+            }
+            
+            BenchmarkRunner.Result result = runner.run(benchmark);
+            results.add(result);
+            
+            String change = "";
+            Double before = baselineResults.get(result.getName());
+            if (before != null) {
+                double percent = (result.getNanosPerOperation() - before) * 100 / before;
+                change = String.format(Locale.ROOT, "%+.1f%%", percent);
+                if (percent > threshold) {
+                    change += " !";
+                    regression = true;
+                }
+            }
+            
+            System.out.println(String.format(Locale.ROOT, "%-36s %14.1f %10.1f %14.1f %10s",
+                    result.getName(), result.getNanosPerOperation(), result.getError(),
+                    result.getBytesPerOperation(), change));
+        }
+        
+        if (output != null) {
+            writeResults(output, results);
+        }
+        
+        if (regression) {
+            System.out.println("Some benchmarks are more than " + threshold + "% slower than the baseline");
+            System.exit(1);
+        }
+    }
+    
+    private static boolean matches(String name, List<String> filters) {
+        if (filters.isEmpty()) {
+            return true;
+        }
+        for (String filter : filters) {
+            if (name.contains(filter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Writes the results in the format <code>name;operations;ns/op;error;bytes/op</code>.
+     * 
+     * @param file The file to write to.
+     * @param results The results to write.
+     * 
+     * @throws IOException If writing the file fails.
+     */
+    private static void writeResults(File file, List<BenchmarkRunner.Result> results) throws IOException {
+        try (Writer out = new BufferedWriter(new FileWriter(file))) {
+            for (BenchmarkRunner.Result result : results) {
+                out.write(String.format(Locale.ROOT, "%s;%d;%.1f;%.1f;%.1f\n", result.getName(),
+                        result.getOperations(), result.getNanosPerOperation(), result.getError(),
+                        result.getBytesPerOperation()));
+            }
+        }
+    }
+    
+    /**
+     * Reads the results written by {@link #writeResults(File, List)}.
+     * 
+     * @param file The file to read.
+     * @return The nanoseconds per operation of each benchmark.
+     * 
+     * @throws IOException If reading the file fails.
+     */
+    private static Map<String, Double> readResults(File file) throws IOException {
+        Map<String, Double> result = new HashMap<>();
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] parts = line.split(";");
+                if (parts.length == 5) {
+                    result.put(parts[0], Double.parseDouble(parts[2]));
+                }
+            }
+        }
+        return result;
+    }
+    
+}
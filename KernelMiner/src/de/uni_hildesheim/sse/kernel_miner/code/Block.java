@@ -1,5 +1,6 @@
 package de.uni_hildesheim.sse.kernel_miner.code;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -11,7 +12,9 @@ import de.uni_hildesheim.sse.kernel_miner.util.logic.Formula;
  * 
  * @author Adam Krafczyk
  */
-public class Block {
+public class Block implements Serializable {
+    
+    private static final long serialVersionUID = 2187352846371948519L;
     
     private Formula presenceCondition;
     
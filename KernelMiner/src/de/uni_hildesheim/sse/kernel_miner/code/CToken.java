@@ -2,12 +2,7 @@ package de.uni_hildesheim.sse.kernel_miner.code;
 
 import java.io.Serializable;
 
-import de.fosd.typechef.LexerToken;
-import de.uni_hildesheim.sse.kernel_miner.code.typechef.TypeChefPresenceConditionGrammar;
 import de.uni_hildesheim.sse.kernel_miner.util.logic.Formula;
-import de.uni_hildesheim.sse.kernel_miner.util.parser.ExpressionFormatException;
-import de.uni_hildesheim.sse.kernel_miner.util.parser.Parser;
-import de.uni_hildesheim.sse.kernel_miner.util.parser.VariableCache;
 
 public class CToken implements Serializable {
     
@@ -23,14 +18,12 @@ public class CToken implements Serializable {
     
     private String sourceName;
     
-    public CToken(LexerToken token) throws ExpressionFormatException {
-        this.text = token.getText();
-        this.line = token.getLine();
-        this.column = token.getColumn();
-        this.sourceName = token.getSourceName();
-
-        this.pc = new Parser<Formula>(new TypeChefPresenceConditionGrammar(new VariableCache())).parse(
-                token.getFeature().toTextExpr());
+    public CToken(String text, Formula pc, int line, int column, String sourceName) {
+        this.text = text;
+        this.pc = pc;
+        this.line = line;
+        this.column = column;
+        this.sourceName = sourceName;
     }
     
     /*
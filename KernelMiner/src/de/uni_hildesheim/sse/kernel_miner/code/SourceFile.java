@@ -22,6 +22,10 @@ public class SourceFile {
     
     private List<CToken> tokens;
     
+    private int numTokens;
+    
+    private long typeChefDuration;
+    
     /**
      * Creates a new source file.
      * 
@@ -30,6 +34,7 @@ public class SourceFile {
     public SourceFile(File path) {
         this.path = path;
         this.blocks = new ArrayList<>();
+        this.typeChefDuration = -1;
     }
     
     /**
@@ -69,6 +74,35 @@ public class SourceFile {
         return Collections.unmodifiableList(blocks);
     }
     
+    /**
+     * @param numTokens The number of tokens that the blocks of this file were built from.
+     */
+    public void setNumTokens(int numTokens) {
+        this.numTokens = numTokens;
+    }
+    
+    /**
+     * @return The number of tokens that the blocks of this file were built from.
+     */
+    public int getNumTokens() {
+        return numTokens;
+    }
+    
+    /**
+     * @param typeChefDuration How long TypeChef ran on this file, in milliseconds. -1 if TypeChef was not run.
+     */
+    public void setTypeChefDuration(long typeChefDuration) {
+        this.typeChefDuration = typeChefDuration;
+    }
+    
+    /**
+     * @return How long TypeChef ran on this file, in milliseconds. -1 if TypeChef was not run on it (e.g. because
+     *      it was skipped, or its result was cached).
+     */
+    public long getTypeChefDuration() {
+        return typeChefDuration;
+    }
+    
     public void setTokens(List<CToken> tokens) {
         this.tokens = tokens;
     }
@@ -0,0 +1,146 @@
+package de.uni_hildesheim.sse.kernel_miner.code.typechef;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import de.fosd.typechef.featureexpr.FeatureExpr;
+import de.fosd.typechef.lexer.FeatureExprLib;
+import de.fosd.typechef.xtclexer.XtcFExprAnalyzer;
+import net.sf.javabdd.BDD;
+import xtc.lang.cpp.PresenceConditionManager;
+
+/**
+ * Translates the BDDs of the presence conditions of the xtc lexer into {@link FeatureExpr}s.
+ * <p>
+ * The BDD is walked as the shared graph that it is: each node with variable <code>x</code> becomes
+ * <code>(x && high) || (!x && low)</code>, and the translation of each node is cached, so that shared sub-graphs
+ * are only translated once. Enumerating all satisfying paths instead (<code>BDD.allsat()</code>) grows
+ * exponentially with the width of the condition. The {@link FeatureExpr}s of the variables are cached, too.
+ * </p>
+ * <p>
+ * The variable indices and nodes are specific to a single {@link PresenceConditionManager}, so an instance of this
+ * class must only be used for the presence conditions of that manager. Instances are not thread-safe.
+ * </p>
+ * 
+ * @author Adam Krafczyk
+ */
+class BddTranslator {
+    
+    /**
+     * If the node cache grows larger than this, it is cleared.
+     */
+    private static final int MAX_CACHED_NODES = 100000;
+    
+    private PresenceConditionManager manager;
+    
+    /**
+     * The translations of the BDD nodes. The keys are copies made with {@link BDD#id()}, so that the nodes can't be
+     * freed while they are cached (this would allow the BDD factory to re-use the node indices).
+     */
+    private Map<BDD, FeatureExpr> nodes;
+    
+    /**
+     * The translations of the variables, by their index in the BDD factory.
+     */
+    private Map<Integer, FeatureExpr> variables;
+    
+    /**
+     * Creates a translator.
+     * 
+     * @param manager The manager that created the presence conditions that will be translated.
+     */
+    public BddTranslator(PresenceConditionManager manager) {
+        this.manager = manager;
+        this.nodes = new HashMap<>();
+        this.variables = new HashMap<>();
+    }
+    
+    /**
+     * @return The manager that the presence conditions of this translator belong to.
+     */
+    public PresenceConditionManager getManager() {
+        return manager;
+    }
+    
+    /**
+     * Translates the given presence condition.
+     * 
+     * @param pc A presence condition of the manager of this translator.
+     * @return A {@link FeatureExpr} that is equivalent to the given presence condition.
+     */
+    public FeatureExpr translate(PresenceConditionManager.PresenceCondition pc) {
+        return translate(pc.getBDD());
+    }
+    
+    /**
+     * Translates the given node. Does not free or store the given {@link BDD} object.
+     * 
+     * @param bdd The node to translate.
+     * @return The translation.
+     */
+    private FeatureExpr translate(BDD bdd) {
+        if (bdd.isOne()) {
+            return FeatureExprLib.True();
+        }
+        if (bdd.isZero()) {
+            return FeatureExprLib.False();
+        }
+        
+        FeatureExpr result = nodes.get(bdd);
+        if (result == null) {
+            FeatureExpr variable = getVariable(bdd.var());
+            BDD high = bdd.high();
+            BDD low = bdd.low();
+            
+            if (low.isZero()) {
+                result = variable.and(translate(high));
+            } else if (high.isZero()) {
+                result = variable.not().and(translate(low));
+            } else if (high.isOne()) {
+                result = variable.or(translate(low));
+            } else if (low.isOne()) {
+                result = variable.not().or(translate(high));
+            } else {
+                result = variable.and(translate(high)).or(variable.not().and(translate(low)));
+            }
+            
+            high.free();
+            low.free();
+            
+            if (nodes.size() >= MAX_CACHED_NODES) {
+                clear();
+            }
+            nodes.put(bdd.id(), result);
+        }
+        return result;
+    }
+    
+    /**
+     * @param index The index of a variable in the BDD factory.
+     * @return The {@link FeatureExpr} for the variable.
+     */
+    private FeatureExpr getVariable(int index) {
+        FeatureExpr result = variables.get(index);
+        if (result == null) {
+            String name = manager.vars.getName(index);
+            if (name.length() > 10 && name.startsWith("(defined ") && name.endsWith(")")) {
+                result = FeatureExprLib.l().createDefinedExternal(name.substring(9, name.length() - 1));
+            } else {
+                result = new XtcFExprAnalyzer().resolveFExpr(name);
+            }
+            variables.put(index, result);
+        }
+        return result;
+    }
+    
+    /**
+     * Frees the cached nodes. The translator can still be used after this.
+     */
+    public void clear() {
+        for (BDD node : nodes.keySet()) {
+            node.free();
+        }
+        nodes.clear();
+    }
+    
+}
@@ -0,0 +1,108 @@
+package de.uni_hildesheim.sse.kernel_miner.code.typechef;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.uni_hildesheim.sse.kernel_miner.code.Block;
+import de.uni_hildesheim.sse.kernel_miner.util.Files;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.Formula;
+
+/**
+ * Folds the tokens of a file into {@link Block}s, one token at a time. Consecutive tokens with the same
+ * location and presence condition end up in the same block. This allows building the blocks while the
+ * tokens are received, without storing the list of tokens.
+ * 
+ * @author Adam Krafczyk
+ */
+class BlockBuilder {
+    
+    private File sourceDir;
+    
+    private List<Block> blocks;
+    
+    private Block current;
+    
+    private Formula currentPc;
+    
+    private int numTokens;
+    
+    /**
+     * The locations of already seen source names, relative to the {@link #sourceDir}.
+     */
+    private Map<String, String> locations;
+    
+    /**
+     * Creates a {@link BlockBuilder} for a single file.
+     * 
+     * @param sourceDir The source tree that the locations of the blocks are relative to.
+     */
+    public BlockBuilder(File sourceDir) {
+        this.sourceDir = sourceDir;
+        this.blocks = new ArrayList<>();
+        this.locations = new HashMap<>();
+    }
+    
+    /**
+     * Adds the next token of the file.
+     * 
+     * @param text The text of the token.
+     * @param pc The presence condition of the token.
+     * @param sourceName The source name of the token, as reported by TypeChef. May be <code>null</code>.
+     * @param line The line number of the token.
+     */
+    public void addToken(String text, Formula pc, String sourceName, int line) {
+        numTokens++;
+        String location = getLocation(sourceName);
+        
+        if (current != null && location.equals(current.getLocation())
+                && (pc == currentPc || pc.equals(currentPc))) {
+            current.addLine(text);
+            
+        } else {
+            current = new Block(pc, location, line);
+            currentPc = pc;
+            blocks.add(current);
+        }
+    }
+    
+    /**
+     * Discards all blocks built so far.
+     */
+    public void reset() {
+        blocks.clear();
+        current = null;
+        currentPc = null;
+        numTokens = 0;
+    }
+    
+    /**
+     * @return The blocks built from the tokens added so far.
+     */
+    public List<Block> getBlocks() {
+        return blocks;
+    }
+    
+    /**
+     * @return The number of tokens added so far.
+     */
+    public int getNumTokens() {
+        return numTokens;
+    }
+    
+    private String getLocation(String sourceName) {
+        String location = locations.get(sourceName);
+        if (location == null) {
+            String filename = "unkown";
+            if (sourceName != null) {
+                filename = sourceName.replace("file ", "");
+            }
+            location = Files.relativize(new File(filename), sourceDir);
+            locations.put(sourceName, location);
+        }
+        return location;
+    }
+    
+}
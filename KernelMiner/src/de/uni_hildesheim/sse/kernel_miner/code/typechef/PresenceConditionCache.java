@@ -0,0 +1,89 @@
+package de.uni_hildesheim.sse.kernel_miner.code.typechef;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import de.fosd.typechef.featureexpr.FeatureExpr;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.Formula;
+import de.uni_hildesheim.sse.kernel_miner.util.parser.ExpressionFormatException;
+import de.uni_hildesheim.sse.kernel_miner.util.parser.Parser;
+import de.uni_hildesheim.sse.kernel_miner.util.parser.VariableCache;
+
+/**
+ * Converts the presence conditions of TypeChef tokens to {@link Formula}s. The conversion is memoized,
+ * so that equal presence conditions are only parsed once and share the same {@link Formula} instance.
+ * All variables are obtained from a single {@link VariableCache}.
+ * <p>
+ * This class is not thread-safe; each thread should use its own instance.
+ * </p>
+ * 
+ * @author Adam Krafczyk
+ */
+public class PresenceConditionCache {
+    
+    /**
+     * The maximum number of distinct presence conditions to keep. If more are converted, then the least
+     * recently used ones are removed.
+     */
+    private static final int MAX_SIZE = 20000;
+    
+    private Parser<Formula> parser;
+    
+    private Map<String, Formula> formulas;
+    
+    private FeatureExpr lastFeature;
+    
+    private Formula lastPc;
+    
+    /**
+     * Creates an empty cache.
+     */
+    public PresenceConditionCache() {
+        parser = new Parser<>(new TypeChefPresenceConditionGrammar(new VariableCache()));
+        formulas = new LinkedHashMap<String, Formula>(1024, 0.75f, true) {
+            
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Formula> eldest) {
+                return size() > MAX_SIZE;
+            }
+            
+        };
+    }
+    
+    /**
+     * Converts the given presence condition to a {@link Formula}.
+     * 
+     * @param feature The presence condition of a TypeChef token.
+     * @return The presence condition as a {@link Formula}. Equal presence conditions return the same instance,
+     *      as long as they are still cached.
+     * 
+     * @throws ExpressionFormatException If the presence condition can't be parsed.
+     */
+    public Formula getPc(FeatureExpr feature) throws ExpressionFormatException {
+        // consecutive tokens usually share the same FeatureExpr instance
+        if (feature == lastFeature) {
+            return lastPc;
+        }
+        
+        String text = feature.toTextExpr();
+        Formula pc = formulas.get(text);
+        if (pc == null) {
+            pc = parser.parse(text);
+            formulas.put(text, pc);
+        }
+        
+        lastFeature = feature;
+        lastPc = pc;
+        return pc;
+    }
+    
+    /**
+     * @return The number of distinct presence conditions that are currently cached.
+     */
+    public int getSize() {
+        return formulas.size();
+    }
+    
+}
@@ -0,0 +1,250 @@
+package de.uni_hildesheim.sse.kernel_miner.code.typechef;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.uni_hildesheim.sse.kernel_miner.code.CToken;
+import de.uni_hildesheim.sse.kernel_miner.code.SourceFile;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.Formula;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.FormulaFactory;
+
+/**
+ * Reads the messages written by a {@link ProtocolWriter}. See there for a description of the format.
+ * 
+ * @author Adam Krafczyk
+ */
+class ProtocolReader {
+    
+    private DataInputStream in;
+    
+    /**
+     * Creates the received presence conditions, so that equal ones are the same instance, also across files.
+     */
+    private FormulaFactory formulas;
+    
+    private List<String> sources;
+    
+    private List<Formula> pcs;
+    
+    private List<String> variables;
+    
+    /**
+     * Creates a reader for the given stream. The stream is buffered by this reader.
+     * 
+     * @param in The stream to read from.
+     */
+    public ProtocolReader(InputStream in) {
+        this.in = new DataInputStream(new BufferedInputStream(in, 65536));
+        this.formulas = new FormulaFactory();
+        this.sources = new ArrayList<>();
+        this.pcs = new ArrayList<>();
+        this.variables = new ArrayList<>();
+    }
+    
+    /**
+     * Reads the next parameter set.
+     * 
+     * @return The parameters, or <code>null</code> if {@link ProtocolWriter#STOP} was received or the
+     *      stream ended.
+     * @throws IOException If reading fails.
+     */
+    public List<String> readParameters() throws IOException {
+        int tag = in.read();
+        if (tag == -1 || tag == ProtocolWriter.STOP) {
+            return null;
+        }
+        if (tag != ProtocolWriter.PARAMETERS) {
+            throw new IOException("Expected parameters, got tag " + tag);
+        }
+        
+        int size = readNumber();
+        List<String> params = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            params.add(readString());
+        }
+        return params;
+    }
+    
+    /**
+     * Reads the result for a single file and stores the tokens in the file.
+     * 
+     * @param file The file to store the tokens in. Tokens are only set if the lexer succeeded.
+     * @param errors Errors of the lexer are added to this list.
+     * @return Whether the lexer succeeded.
+     * 
+     * @throws IOException If reading fails.
+     */
+    public boolean readResult(SourceFile file, List<String> errors) throws IOException {
+        return readResult(file, errors, null);
+    }
+    
+    /**
+     * Reads the result for a single file.
+     * 
+     * @param file The file to store the result in. It is only set if the lexer succeeded.
+     * @param errors Errors of the lexer are added to this list.
+     * @param blockBuilder If not <code>null</code>, then the tokens are directly passed to this
+     *      {@link BlockBuilder} and the resulting blocks are stored in the file. Otherwise, the tokens are
+     *      stored in the file.
+     * @return Whether the lexer succeeded.
+     * 
+     * @throws IOException If reading fails.
+     */
+    public boolean readResult(SourceFile file, List<String> errors, BlockBuilder blockBuilder)
+            throws IOException {
+        
+        boolean success = false;
+        List<CToken> tokens = null;
+        
+        try {
+            int tag;
+            while ((tag = in.readByte()) != ProtocolWriter.END) {
+                switch (tag) {
+                case ProtocolWriter.TOKENS:
+                    success = true;
+                    if (blockBuilder == null) {
+                        tokens = new ArrayList<>();
+                    }
+                    break;
+                    
+                case ProtocolWriter.SOURCE:
+                    sources.add(readString());
+                    break;
+                    
+                case ProtocolWriter.PC:
+                    pcs.add(readFormula());
+                    break;
+                    
+                case ProtocolWriter.TOKEN:
+                    int sourceId = readNumber();
+                    Formula pc = pcs.get(readNumber());
+                    int line = unZigZag(readNumber());
+                    int column = unZigZag(readNumber());
+                    String text = readString();
+                    
+                    if (!success) {
+                        throw new IOException("Received token before start of token list");
+                    }
+                    String source = sourceId == 0 ? null : sources.get(sourceId - 1);
+                    if (blockBuilder != null) {
+                        blockBuilder.addToken(text, pc, source, line);
+                    } else {
+                        tokens.add(new CToken(text, pc, line, column, source));
+                    }
+                    break;
+                    
+                case ProtocolWriter.ERROR:
+                    errors.add(readString());
+                    break;
+                    
+                case ProtocolWriter.TOKENS_ABORTED:
+                    success = false;
+                    tokens = null;
+                    if (blockBuilder != null) {
+                        blockBuilder.reset();
+                    }
+                    break;
+                    
+                default:
+                    throw new IOException("Invalid tag: " + tag);
+                }
+            }
+        } finally {
+            sources.clear();
+            pcs.clear();
+            variables.clear();
+        }
+        
+        if (success) {
+            if (blockBuilder != null) {
+                file.setBlocks(blockBuilder.getBlocks());
+                file.setNumTokens(blockBuilder.getNumTokens());
+            } else {
+                file.setTokens(tokens);
+            }
+        }
+        return success;
+    }
+    
+    /**
+     * Reads whether the {@link TypeChefRunner} accepts more parameters. Read after {@link #readResult(SourceFile, List, BlockBuilder)}.
+     * 
+     * @return Whether the runner accepts more parameters.
+     * @throws IOException If reading fails.
+     */
+    public boolean readKeepAlive() throws IOException {
+        return in.readBoolean();
+    }
+    
+    private Formula readFormula() throws IOException {
+        int tag = in.readByte();
+        switch (tag) {
+        case ProtocolWriter.VARIABLE:
+            int id = readNumber();
+            String name;
+            if (id == 0) {
+                name = readString();
+                variables.add(name);
+            } else {
+                name = variables.get(id - 1);
+            }
+            return formulas.variable(name);
+            
+        case ProtocolWriter.NEGATION:
+            return formulas.not(readFormula());
+            
+        case ProtocolWriter.CONJUNCTION:
+            Formula left = readFormula();
+            return formulas.and(left, readFormula());
+            
+        case ProtocolWriter.DISJUNCTION:
+            left = readFormula();
+            return formulas.or(left, readFormula());
+            
+        case ProtocolWriter.TRUE:
+            return formulas.getTrue();
+            
+        case ProtocolWriter.FALSE:
+            return formulas.getFalse();
+            
+        default:
+            throw new IOException("Invalid formula tag: " + tag);
+        }
+    }
+    
+    private String readString() throws IOException {
+        byte[] bytes = new byte[readNumber()];
+        in.readFully(bytes);
+        return new String(bytes, ProtocolWriter.UTF_8);
+    }
+    
+    /**
+     * Reads a number written by {@link ProtocolWriter} in a variable length format.
+     * 
+     * @return The number.
+     * @throws IOException If reading fails.
+     */
+    private int readNumber() throws IOException {
+        int result = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (shift > 28) {
+                throw new IOException("Malformed number");
+            }
+            b = in.readByte();
+            result |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return result;
+    }
+    
+    private static int unZigZag(int number) {
+        return (number >>> 1) ^ -(number & 1);
+    }
+    
+}
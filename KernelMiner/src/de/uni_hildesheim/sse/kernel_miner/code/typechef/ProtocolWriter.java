@@ -0,0 +1,307 @@
+package de.uni_hildesheim.sse.kernel_miner.code.typechef;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.fosd.typechef.LexerToken;
+import de.fosd.typechef.featureexpr.FeatureExpr;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.Conjunction;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.Disjunction;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.False;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.Formula;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.Negation;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.True;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.Variable;
+import de.uni_hildesheim.sse.kernel_miner.util.parser.ExpressionFormatException;
+
+/**
+ * Writes the messages between {@link TypeChef} and {@link TypeChefRunner} in a compact binary format.
+ * The counterpart is {@link ProtocolReader}.
+ * 
+ * <p>
+ * Each message starts with a tag byte. Numbers are written as variable length integers (7 bits per byte,
+ * lowest bits first); numbers that may be negative are zig-zag encoded first. Strings are written as
+ * their length in bytes followed by their UTF-8 bytes.
+ * </p>
+ * <p>
+ * {@link TypeChef} sends {@link #PARAMETERS} (followed by the number of parameters and the parameters)
+ * or {@link #STOP}. {@link TypeChefRunner} answers with any number of {@link #SOURCE}, {@link #PC},
+ * {@link #TOKEN} and {@link #ERROR} messages, finished by {@link #END}, followed by a single byte whether
+ * it accepts more parameters. {@link #TOKENS} is sent before the first token, if lexing succeeded;
+ * {@link #TOKENS_ABORTED} discards all tokens sent so far.
+ * </p>
+ * <p>
+ * Source names and presence conditions are only sent once per file; tokens reference them by their
+ * index. Presence conditions are sent as their {@link Formula} tree in prefix order; variable names
+ * are also sent only once per file.
+ * </p>
+ * 
+ * @author Adam Krafczyk
+ */
+class ProtocolWriter {
+    
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    static final byte PARAMETERS = 1;
+    static final byte STOP = 2;
+    
+    static final byte TOKENS = 10;
+    static final byte SOURCE = 11;
+    static final byte PC = 12;
+    static final byte TOKEN = 13;
+    static final byte ERROR = 14;
+    static final byte TOKENS_ABORTED = 15;
+    static final byte END = 16;
+    
+    static final byte FALSE = 0;
+    static final byte TRUE = 1;
+    static final byte VARIABLE = 2;
+    static final byte NEGATION = 3;
+    static final byte CONJUNCTION = 4;
+    static final byte DISJUNCTION = 5;
+    
+    private DataOutputStream out;
+    
+    private PresenceConditionCache pcCache;
+    
+    private Map<String, Integer> sourceIds;
+    
+    private Map<FeatureExpr, Integer> featureIds;
+    
+    private Map<Formula, Integer> pcIds;
+    
+    private Map<String, Integer> variableIds;
+    
+    /**
+     * Creates a writer for the given stream. The stream is buffered by this writer.
+     * 
+     * @param out The stream to write to.
+     */
+    public ProtocolWriter(OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 65536));
+        this.pcCache = new PresenceConditionCache();
+        this.sourceIds = new HashMap<>();
+        this.featureIds = new IdentityHashMap<>();
+        this.pcIds = new IdentityHashMap<>();
+        this.variableIds = new HashMap<>();
+    }
+    
+    /**
+     * Sends a parameter set for TypeChef.
+     * 
+     * @param params The parameters.
+     * @throws IOException If writing fails.
+     */
+    public void writeParameters(List<String> params) throws IOException {
+        out.writeByte(PARAMETERS);
+        writeNumber(params.size());
+        for (String param : params) {
+            writeString(param);
+        }
+        out.flush();
+    }
+    
+    /**
+     * Tells the {@link TypeChefRunner} to stop.
+     * 
+     * @throws IOException If writing fails.
+     */
+    public void writeStop() throws IOException {
+        out.writeByte(STOP);
+        out.flush();
+    }
+    
+    /**
+     * Starts the list of tokens. Must be called before the first {@link #writeToken(LexerToken)} of a file.
+     * 
+     * @throws IOException If writing fails.
+     */
+    public void writeTokensStart() throws IOException {
+        out.writeByte(TOKENS);
+    }
+    
+    /**
+     * Sends a single token. The source name and presence condition are only sent if they were not
+     * already sent for the current file.
+     * 
+     * @param token The token to send.
+     * 
+     * @throws ExpressionFormatException If the presence condition of the token can't be parsed. Nothing
+     *      is written in this case.
+     * @throws IOException If writing fails.
+     */
+    public void writeToken(LexerToken token) throws ExpressionFormatException, IOException {
+        int pcId = getPcId(token.getFeature());
+        
+        int sourceId = 0;
+        String sourceName = token.getSourceName();
+        if (sourceName != null) {
+            Integer id = sourceIds.get(sourceName);
+            if (id == null) {
+                id = sourceIds.size() + 1;
+                sourceIds.put(sourceName, id);
+                out.writeByte(SOURCE);
+                writeString(sourceName);
+            }
+            sourceId = id;
+        }
+        
+        out.writeByte(TOKEN);
+        writeNumber(sourceId);
+        writeNumber(pcId);
+        writeNumber(zigZag(token.getLine()));
+        writeNumber(zigZag(token.getColumn()));
+        writeString(token.getText());
+    }
+    
+    /**
+     * Discards all tokens sent for the current file. The reader will have no tokens for this file.
+     * 
+     * @throws IOException If writing fails.
+     */
+    public void writeTokensAborted() throws IOException {
+        out.writeByte(TOKENS_ABORTED);
+    }
+    
+    /**
+     * Sends an error message of the lexer.
+     * 
+     * @param error The error message.
+     * @throws IOException If writing fails.
+     */
+    public void writeError(String error) throws IOException {
+        out.writeByte(ERROR);
+        writeString(error);
+    }
+    
+    /**
+     * Finishes the result for the current file. The dictionaries for source names and presence conditions
+     * are cleared.
+     * 
+     * @throws IOException If writing fails.
+     */
+    public void writeEnd() throws IOException {
+        out.writeByte(END);
+        out.flush();
+        
+        sourceIds.clear();
+        featureIds.clear();
+        pcIds.clear();
+        variableIds.clear();
+    }
+    
+    /**
+     * Sends whether the {@link TypeChefRunner} accepts further parameters. Sent after {@link #writeEnd()}.
+     * 
+     * @param keepAlive Whether more parameters are accepted.
+     * @throws IOException If writing fails.
+     */
+    public void writeKeepAlive(boolean keepAlive) throws IOException {
+        out.writeBoolean(keepAlive);
+        out.flush();
+    }
+    
+    /**
+     * Returns the index of the given presence condition. If it was not sent yet for the current file,
+     * then it is sent. The conversion to {@link Formula}s is cached for all files, so equal presence
+     * conditions are only parsed once.
+     * 
+     * @param feature The presence condition of a token.
+     * @return The index of the presence condition.
+     * 
+     * @throws ExpressionFormatException If the presence condition can't be parsed.
+     * @throws IOException If writing fails.
+     */
+    private int getPcId(FeatureExpr feature) throws ExpressionFormatException, IOException {
+        // consecutive tokens usually share the same FeatureExpr instance
+        Integer id = featureIds.get(feature);
+        if (id == null) {
+            Formula pc = pcCache.getPc(feature);
+            id = pcIds.get(pc);
+            if (id == null) {
+                id = pcIds.size();
+                pcIds.put(pc, id);
+                out.writeByte(PC);
+                writeFormula(pc);
+            }
+            featureIds.put(feature, id);
+        }
+        return id;
+    }
+    
+    private void writeFormula(Formula formula) throws IOException {
+        if (formula instanceof Variable) {
+            String name = ((Variable) formula).getName();
+            out.writeByte(VARIABLE);
+            Integer id = variableIds.get(name);
+            if (id == null) {
+                variableIds.put(name, variableIds.size());
+                writeNumber(0);
+                writeString(name);
+            } else {
+                writeNumber(id + 1);
+            }
+            
+        } else if (formula instanceof Negation) {
+            out.writeByte(NEGATION);
+            writeFormula(((Negation) formula).getFormula());
+            
+        } else if (formula instanceof Conjunction) {
+            out.writeByte(CONJUNCTION);
+            writeFormula(((Conjunction) formula).getLeft());
+            writeFormula(((Conjunction) formula).getRight());
+            
+        } else if (formula instanceof Disjunction) {
+            out.writeByte(DISJUNCTION);
+            writeFormula(((Disjunction) formula).getLeft());
+            writeFormula(((Disjunction) formula).getRight());
+            
+        } else if (formula instanceof True) {
+            out.writeByte(TRUE);
+            
+        } else if (formula instanceof False) {
+            out.writeByte(FALSE);
+            
+        } else {
+            throw new IOException("Unknown formula type: " + formula.getClass().getName());
+        }
+    }
+    
+    private void writeString(String str) throws IOException {
+        byte[] bytes = str.getBytes(UTF_8);
+        writeNumber(bytes.length);
+        out.write(bytes);
+    }
+    
+    /**
+     * Writes a non-negative number in a variable length format.
+     * 
+     * @param number The number to write.
+     * @throws IOException If writing fails.
+     */
+    private void writeNumber(int number) throws IOException {
+        while ((number & ~0x7F) != 0) {
+            out.writeByte((number & 0x7F) | 0x80);
+            number >>>= 7;
+        }
+        out.writeByte(number);
+    }
+    
+    /**
+     * Maps signed numbers to unsigned ones, so that numbers with small absolute values stay small.
+     * 
+     * @param number The signed number.
+     * @return The zig-zag encoded number.
+     */
+    static int zigZag(int number) {
+        return (number << 1) ^ (number >> 31);
+    }
+    
+}
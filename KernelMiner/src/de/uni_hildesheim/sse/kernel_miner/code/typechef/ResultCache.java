@@ -0,0 +1,409 @@
+package de.uni_hildesheim.sse.kernel_miner.code.typechef;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import de.uni_hildesheim.sse.kernel_miner.code.Block;
+import de.uni_hildesheim.sse.kernel_miner.code.SourceFile;
+import de.uni_hildesheim.sse.kernel_miner.util.Files;
+
+/**
+ * A content-addressed cache for the results of TypeChef runs. This allows skipping unchanged files when
+ * successive versions of the source tree are analyzed.
+ * <p>
+ * Each result is stored under a key that is a hash over the TypeChef parameters, the presence condition of
+ * the file and the contents of all files that the result depends on. The dependencies are the complete include
+ * closure of the source file, the static includes of the configuration and all files that the tokens of the
+ * result come from (as reported by the source names of the tokens). Since the latter are only known after
+ * TypeChef ran on the file, they are stored separately under a key that only contains the parameters and the
+ * presence condition; a lookup reads this list and hashes the current contents of the listed files and the files
+ * that they include.
+ * </p>
+ * <p>
+ * The include closure is found by a textual scan of the <code>#include</code> directives, so that headers that
+ * only define macros are covered, too. All directives are followed, regardless of the conditionals around them,
+ * and every existing file that a directive may refer to (in the directory of the including file and in each
+ * include directory) is part of the closure. Thus, a header that is changed, added to an include directory or
+ * shadows another one changes the key. Includes whose name is computed by a macro can't be followed; the
+ * headers included this way are only covered if they contribute tokens, or are included by such a header.
+ * </p>
+ * <p>
+ * The lexer output (the .pi file) is not stored, to keep the cache small; results loaded from the cache have
+ * no lexer output.
+ * </p>
+ * <p>
+ * Paths inside the source tree are stored relative to it, so that the cache can be shared between different
+ * source trees (e.g. different kernel versions).
+ * </p>
+ * 
+ * @author Adam Krafczyk
+ */
+class ResultCache {
+    
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    
+    /**
+     * Headers are scanned as single bytes, since they are not always valid UTF-8.
+     */
+    private static final Charset HEADER_CHARSET = Charset.forName("ISO-8859-1");
+    
+    private static final Pattern INCLUDE = Pattern.compile(
+            "^[ \\t]*#[ \\t]*include(?:_next)?[ \\t]*([<\"])([^>\"\\n]+)[>\"]", Pattern.MULTILINE);
+    
+    /**
+     * The hash that is used for dependencies that can't be read.
+     */
+    private static final String MISSING = "-";
+    
+    private File cacheDir;
+    
+    private File sourceDir;
+    
+    /**
+     * The hashes of the contents of the files that were already hashed. The inputs don't change while
+     * TypeChef runs, and the same headers are included by most source files.
+     */
+    private Map<File, String> contentHashes;
+    
+    /**
+     * The <code>#include</code> directives of the files that were already scanned. Each entry is the name of
+     * the included file, prefixed with <code>"</code> or <code>&lt;</code>.
+     */
+    private Map<File, List<String>> includes;
+    
+    /**
+     * Whether the files that were already checked exist.
+     */
+    private Map<File, Boolean> existing;
+    
+    /**
+     * Creates a cache.
+     * 
+     * @param cacheDir The directory to store the results in. Created if it does not exist.
+     * @param sourceDir The source tree that the paths of the source files are relative to.
+     */
+    public ResultCache(File cacheDir, File sourceDir) {
+        this.cacheDir = cacheDir;
+        this.sourceDir = sourceDir;
+        this.contentHashes = new ConcurrentHashMap<>();
+        this.includes = new ConcurrentHashMap<>();
+        this.existing = new ConcurrentHashMap<>();
+        
+        cacheDir.mkdirs();
+    }
+    
+    /**
+     * Calculates the key that the dependencies of a TypeChef run are stored under.
+     * 
+     * @param file The source file that TypeChef runs on.
+     * @param parameters The parameters for TypeChef. These must not contain any paths that change between
+     *      runs with the same inputs, e.g. temporary files.
+     * @return A key for {@link #load(SourceFile, String, List)} and {@link #store(SourceFile, String, Collection, List)}.
+     */
+    public String getConfigurationKey(SourceFile file, List<String> parameters) {
+        MessageDigest digest = createDigest();
+        update(digest, file.getPath().getPath());
+        for (String parameter : parameters) {
+            update(digest, parameter);
+        }
+        update(digest, file.getPresenceCondition() != null ? file.getPresenceCondition().toString() : "");
+        return toHex(digest.digest());
+    }
+    
+    /**
+     * Loads the stored result for the given file. If one is found, then the blocks and the number of
+     * tokens are set in the file.
+     * 
+     * @param file The source file to load the result for.
+     * @param configurationKey The key calculated by {@link #getConfigurationKey(SourceFile, List)}.
+     * @param includeDirs The directories that headers are searched in, as passed to TypeChef.
+     * @return Whether a result for the current contents of all dependencies was found.
+     * 
+     * @throws IOException If reading the stored result fails.
+     */
+    public boolean load(SourceFile file, String configurationKey, List<File> includeDirs) throws IOException {
+        File dependenciesFile = getFile(configurationKey, ".deps");
+        if (!dependenciesFile.isFile()) {
+            return false;
+        }
+        
+        List<String> dependencies = new ArrayList<>();
+        for (String line : Files.readFile(dependenciesFile).split("\n")) {
+            if (!line.isEmpty()) {
+                dependencies.add(line);
+            }
+        }
+        
+        String resultKey = getResultKey(configurationKey, dependencies, includeDirs);
+        File blocksFile = getFile(resultKey, ".blocks");
+        if (!blocksFile.isFile()) {
+            return false;
+        }
+        
+        List<Block> blocks;
+        int numTokens;
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(blocksFile)))) {
+            numTokens = in.readInt();
+            blocks = new ArrayList<>();
+            int numBlocks = in.readInt();
+            for (int i = 0; i < numBlocks; i++) {
+                blocks.add((Block) in.readObject());
+            }
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Invalid cache entry " + blocksFile, e);
+        }
+        
+        file.setBlocks(blocks);
+        file.setNumTokens(numTokens);
+        return true;
+    }
+    
+    /**
+     * Stores the result of a TypeChef run.
+     * 
+     * @param file The source file that TypeChef ran on. Its blocks are stored.
+     * @param configurationKey The key calculated by {@link #getConfigurationKey(SourceFile, List)}.
+     * @param staticDependencies Files outside of the source tree that every result depends on, e.g. the
+     *      platform header.
+     * @param includeDirs The directories that headers are searched in, as passed to TypeChef.
+     * 
+     * @throws IOException If writing the result fails.
+     */
+    public void store(SourceFile file, String configurationKey, Collection<File> staticDependencies,
+            List<File> includeDirs) throws IOException {
+        
+        // sorted, so that the key does not depend on the order of the blocks
+        Set<String> dependencies = new TreeSet<>();
+        dependencies.add(file.getPath().getPath());
+        for (Block block : file.getBlocks()) {
+            dependencies.add(block.getLocation());
+        }
+        for (File dependency : staticDependencies) {
+            dependencies.add(Files.relativize(dependency.getAbsoluteFile(), sourceDir));
+        }
+        
+        List<String> dependencyList = new ArrayList<>(dependencies);
+        String resultKey = getResultKey(configurationKey, dependencyList, includeDirs);
+        
+        File blocksFile = getFile(resultKey, ".blocks");
+        File tmpBlocksFile = createTempFile(blocksFile);
+        try (ObjectOutputStream out = new ObjectOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmpBlocksFile)))) {
+            out.writeInt(file.getNumTokens());
+            out.writeInt(file.getBlocks().size());
+            for (Block block : file.getBlocks()) {
+                out.writeObject(block);
+            }
+        }
+        
+        StringBuilder content = new StringBuilder();
+        for (String dependency : dependencyList) {
+            content.append(dependency).append('\n');
+        }
+        File dependenciesFile = getFile(configurationKey, ".deps");
+        File tmpDependenciesFile = createTempFile(dependenciesFile);
+        Files.writeFile(tmpDependenciesFile, content.toString());
+        
+        // rename the complete files into place, so that other threads never see partially written entries
+        move(tmpBlocksFile, blocksFile);
+        move(tmpDependenciesFile, dependenciesFile);
+    }
+    
+    /**
+     * Calculates the key that a result is stored under.
+     * 
+     * @param configurationKey The key calculated by {@link #getConfigurationKey(SourceFile, List)}.
+     * @param dependencies The paths of the dependencies, relative to the source tree if they are inside it.
+     * @param includeDirs The directories that headers are searched in.
+     * @return The key of the result for the current contents of the dependencies and the files they include.
+     */
+    private String getResultKey(String configurationKey, List<String> dependencies, List<File> includeDirs) {
+        List<File> roots = new ArrayList<>();
+        for (String dependency : dependencies) {
+            File path = new File(dependency);
+            if (!path.isAbsolute()) {
+                path = new File(sourceDir, dependency);
+            }
+            roots.add(path);
+        }
+        
+        // sorted, so that the key does not depend on the order in which the closure is found
+        Set<String> closure = new TreeSet<>();
+        File base = normalize(sourceDir);
+        for (File path : getIncludeClosure(roots, includeDirs)) {
+            closure.add(Files.relativize(path, base));
+        }
+        // the dependencies are always part of the key, even if they don't exist
+        closure.addAll(dependencies);
+        
+        MessageDigest digest = createDigest();
+        update(digest, configurationKey);
+        for (String dependency : closure) {
+            File path = new File(dependency);
+            if (!path.isAbsolute()) {
+                path = new File(sourceDir, dependency);
+            }
+            update(digest, dependency);
+            update(digest, getContentHash(path));
+        }
+        return toHex(digest.digest());
+    }
+    
+    /**
+     * Finds all existing files that the given files (transitively) include.
+     * 
+     * @param roots The files to start from.
+     * @param includeDirs The directories that headers are searched in.
+     * @return The normalized, absolute paths of the existing roots and all existing files they may include.
+     */
+    private Set<File> getIncludeClosure(List<File> roots, List<File> includeDirs) {
+        Set<File> result = new HashSet<>();
+        Deque<File> todo = new ArrayDeque<>();
+        for (File root : roots) {
+            todo.add(normalize(root));
+        }
+        
+        while (!todo.isEmpty()) {
+            File file = todo.poll();
+            if (result.contains(file) || !exists(file)) {
+                continue;
+            }
+            result.add(file);
+            
+            for (String include : getIncludes(file)) {
+                String name = include.substring(1);
+                if (include.charAt(0) == '"') {
+                    todo.add(normalize(new File(file.getParentFile(), name)));
+                }
+                for (File includeDir : includeDirs) {
+                    todo.add(normalize(new File(includeDir, name)));
+                }
+            }
+        }
+        
+        return result;
+    }
+    
+    /**
+     * @param file The file to scan.
+     * @return The <code>#include</code> directives in the given file; see {@link #includes}.
+     */
+    private List<String> getIncludes(File file) {
+        List<String> result = includes.get(file);
+        if (result == null) {
+            result = new ArrayList<>();
+            try {
+                Matcher matcher = INCLUDE.matcher(Files.readFile(file, HEADER_CHARSET));
+                while (matcher.find()) {
+                    result.add(matcher.group(1) + matcher.group(2).trim());
+                }
+            } catch (IOException e) {
+                // the file is covered by its content hash
+            }
+            includes.put(file, result);
+        }
+        return result;
+    }
+    
+    private boolean exists(File file) {
+        Boolean result = existing.get(file);
+        if (result == null) {
+            result = file.isFile();
+            existing.put(file, result);
+        }
+        return result;
+    }
+    
+    private static File normalize(File file) {
+        return file.getAbsoluteFile().toPath().normalize().toFile();
+    }
+    
+    /**
+     * @param file The file to hash.
+     * @return The hash of the contents of the given file; {@link #MISSING} if it can't be read.
+     */
+    private String getContentHash(File file) {
+        String result = contentHashes.get(file);
+        if (result == null) {
+            MessageDigest digest = createDigest();
+            try (InputStream in = new FileInputStream(file)) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+                result = toHex(digest.digest());
+            } catch (IOException e) {
+                result = MISSING;
+            }
+            contentHashes.put(file, result);
+        }
+        return result;
+    }
+    
+    /**
+     * @param key The key of an entry.
+     * @param suffix The suffix for the type of entry.
+     * @return The file for the entry. The files are distributed into sub-directories by the first two
+     *      characters of the key, to keep the directories small.
+     */
+    private File getFile(String key, String suffix) {
+        return new File(new File(cacheDir, key.substring(0, 2)), key + suffix);
+    }
+    
+    private static File createTempFile(File target) throws IOException {
+        target.getParentFile().mkdirs();
+        return File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+    }
+    
+    private static void move(File from, File to) throws IOException {
+        java.nio.file.Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-1
+            throw new RuntimeException(e);
+        }
+    }
+    
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(CHARSET));
+        // separate the values, so that e.g. "ab","c" and "a","bc" have different hashes
+        digest.update((byte) 0);
+    }
+    
+    private static String toHex(byte[] hash) {
+        StringBuilder result = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            result.append(String.format("%02x", b));
+        }
+        return result.toString();
+    }
+    
+}
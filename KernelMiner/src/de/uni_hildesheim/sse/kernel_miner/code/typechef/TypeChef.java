@@ -5,9 +5,6 @@ import java.io.EOFException;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.lang.ProcessBuilder.Redirect;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.ArrayList;
@@ -18,10 +15,9 @@ import de.uni_hildesheim.sse.kernel_miner.code.Block;
 import de.uni_hildesheim.sse.kernel_miner.code.CToken;
 import de.uni_hildesheim.sse.kernel_miner.code.SourceFile;
 import de.uni_hildesheim.sse.kernel_miner.kbuild.KbuildParamFile;
-import de.uni_hildesheim.sse.kernel_miner.util.Files;
 import de.uni_hildesheim.sse.kernel_miner.util.Logger;
 import de.uni_hildesheim.sse.kernel_miner.util.ZipArchive;
-import de.uni_hildesheim.sse.kernel_miner.util.logic.Formula;
+import de.uni_hildesheim.sse.kernel_miner.util.ZipArchiveWriter;
 import de.uni_hildesheim.sse.kernel_miner.util.logic.True;
 import de.uni_hildesheim.sse.kernel_miner.util.logic.solver.SatSolver;
 import de.uni_hildesheim.sse.kernel_miner.util.logic.solver.SolverException;
@@ -34,12 +30,6 @@ import de.uni_hildesheim.sse.kernel_miner.util.logic.solver.SolverException;
  */
 public class TypeChef {
     
-    /**
-     * Whether to launch a separate JVM or not. Set to <code>true</code> only
-     * for debug purposes.
-     */
-    private static final boolean CALL_IN_SAME_VM = true;
-    
     /**
      * Whether the TypeChef parameters should be logged.
      */
@@ -70,10 +60,62 @@ public class TypeChef {
     
     private File dimacsModel;
     
+    /**
+     * The solver that holds the parsed {@link #dimacsModel}. Lazily created by {@link #getSolver()}
+     * and shared by all threads.
+     */
+    private SatSolver dimacsSolver;
+    
     private ZipArchive output;
     
+    /**
+     * If not <code>null</code>, then the output is written through this writer instead of directly into
+     * the {@link #output}.
+     */
+    private ZipArchiveWriter outputWriter;
+    
+    /**
+     * Whether {@link #runOnFile(SourceFile)} skips files that already have a .csv file in the {@link #output}.
+     */
+    private boolean checkExistingOutput;
+    
+    private File resultCacheDir;
+    
+    /**
+     * The cache in {@link #resultCacheDir}. Lazily created by {@link #getResultCache()} and shared by all threads.
+     */
+    private ResultCache resultCache;
+    
     private File workingDir;
     
+    /**
+     * Whether to run TypeChef in this JVM or in separate ones. Set to <code>true</code> only
+     * for debug purposes.
+     */
+    private boolean callInSameVm;
+    
+    private int processMaxFiles;
+    
+    private String processMaxHeap;
+    
+    /**
+     * Whether the tokens are folded into blocks while they are received from TypeChef, instead of
+     * storing them in the {@link SourceFile} for {@link #parseTokens(SourceFile)}.
+     */
+    private boolean streamBlocks;
+    
+    /**
+     * A parameter that is not passed to TypeChef, but tells {@link TypeChefRunner} to coalesce layout tokens.
+     */
+    static final String COALESCE_LAYOUT_PARAMETER = "--kernelMinerCoalesceLayout";
+    
+    private boolean coalesceLayout;
+    
+    /**
+     * The TypeChef processes that are currently not running a file.
+     */
+    private LinkedList<TypeChefProcess> idleProcesses;
+    
     /**
      * Creates a {@link TypeChef} instance with no parameters set. The appropriate
      * set* and add* methods must be called before this can be used.
@@ -83,6 +125,13 @@ public class TypeChef {
         postIncludeDirs = new ArrayList<>();
         sourceIncludeDirs = new ArrayList<>();
         preprocessorDefines = new ArrayList<>();
+        callInSameVm = true;
+        processMaxFiles = 100;
+        processMaxHeap = "20g";
+        streamBlocks = true;
+        coalesceLayout = true;
+        checkExistingOutput = true;
+        idleProcesses = new LinkedList<>();
     }
     
     /**
@@ -93,6 +142,13 @@ public class TypeChef {
     public void setSourceDir(File sourceDir) {
         this.sourceDir = sourceDir;
     }
+    
+    /**
+     * @return The directory of the source code tree.
+     */
+    public File getSourceDir() {
+        return sourceDir;
+    }
 
     /**
      * Sets the path to the platform header file, containing the symbols defined
@@ -223,8 +279,24 @@ public class TypeChef {
         this.kbuildParamFile = kbuilbParamFile;
     }
     
-    public void setDimacsModel(File dimacsModel) {
+    public synchronized void setDimacsModel(File dimacsModel) {
         this.dimacsModel = dimacsModel;
+        this.dimacsSolver = null;
+    }
+    
+    /**
+     * Returns the {@link SatSolver} for the {@link #dimacsModel}. The DIMACS model is only read
+     * once, the first time this method is called, and kept loaded for all following checks.
+     * 
+     * @return The solver for the {@link #dimacsModel}.
+     * 
+     * @throws SolverException If reading the DIMACS model fails.
+     */
+    private synchronized SatSolver getSolver() throws SolverException {
+        if (dimacsSolver == null) {
+            dimacsSolver = new SatSolver(dimacsModel, "CONFIG_");
+        }
+        return dimacsSolver;
     }
     
     /**
@@ -245,6 +317,50 @@ public class TypeChef {
         return output;
     }
     
+    /**
+     * Sets a writer for the output archive. If set, then the output files are queued in this writer instead
+     * of being written directly, so that {@link #runOnFile(SourceFile)} does not wait for the archive. Note
+     * that the files are not visible in {@link #getOutput()} until they are written by the writer.
+     * 
+     * @param outputWriter The writer for the {@link ZipArchive} returned by {@link #getOutput()}.
+     *      <code>null</code> to write directly into the archive.
+     */
+    public void setOutputWriter(ZipArchiveWriter outputWriter) {
+        this.outputWriter = outputWriter;
+    }
+    
+    /**
+     * @param checkExistingOutput Whether files that already have a .csv file in the output archive are skipped.
+     *      Defaults to <code>true</code>. Checking requires a lookup in the archive for each file.
+     */
+    public void setCheckExistingOutput(boolean checkExistingOutput) {
+        this.checkExistingOutput = checkExistingOutput;
+    }
+    
+    /**
+     * Sets the directory of the result cache. If a result for the same parameters and the same contents of
+     * the source file and its included headers is found in this cache, then it is used instead of running
+     * TypeChef. The cache does not store the lexer output, so no .pi file is written for cached results. Only
+     * used if blocks are streamed (see {@link #setStreamBlocks(boolean)}).
+     * 
+     * @param resultCacheDir The directory of the cache; can be shared between different source trees.
+     *      <code>null</code> to disable the cache.
+     */
+    public synchronized void setResultCacheDir(File resultCacheDir) {
+        this.resultCacheDir = resultCacheDir;
+        this.resultCache = null;
+    }
+    
+    /**
+     * @return The cache in the {@link #resultCacheDir}; <code>null</code> if no cache is used.
+     */
+    private synchronized ResultCache getResultCache() {
+        if (resultCache == null && resultCacheDir != null && streamBlocks) {
+            resultCache = new ResultCache(resultCacheDir, sourceDir);
+        }
+        return resultCache;
+    }
+    
     /**
      * @param workingDir The working directory where temporary files are stored
      *      while running TypeChef.
@@ -253,6 +369,67 @@ public class TypeChef {
         this.workingDir = workingDir;
     }
     
+    /**
+     * @param callInSameVm Whether TypeChef should run in this JVM instead of separate processes.
+     *      Only useful for debugging. Default is <code>true</code>.
+     */
+    public void setCallInSameVm(boolean callInSameVm) {
+        this.callInSameVm = callInSameVm;
+    }
+    
+    /**
+     * Sets after how many files a TypeChef process is replaced by a new one. Processes are also replaced
+     * if their heap is nearly exhausted. Only used if TypeChef does not run in the same JVM.
+     * 
+     * @param processMaxFiles The maximum number of files per TypeChef process. Default is 100.
+     */
+    public void setProcessMaxFiles(int processMaxFiles) {
+        this.processMaxFiles = processMaxFiles;
+    }
+    
+    /**
+     * @param processMaxHeap The maximum heap size of each TypeChef process, as passed to <code>-Xmx</code>.
+     *      Default is "20g".
+     */
+    public void setProcessMaxHeap(String processMaxHeap) {
+        this.processMaxHeap = processMaxHeap;
+    }
+    
+    /**
+     * @param streamBlocks Whether the tokens should be folded into blocks while they are received from
+     *      TypeChef. If <code>true</code>, then the list of tokens is never stored; {@link #runOnFile(SourceFile)}
+     *      already stores the blocks in the file and {@link #parseTokens(SourceFile)} does nothing.
+     *      Default is <code>true</code>.
+     */
+    public void setStreamBlocks(boolean streamBlocks) {
+        this.streamBlocks = streamBlocks;
+    }
+    
+    /**
+     * @param coalesceLayout Whether runs of layout tokens (whitespace, newlines) should be merged into a single
+     *      token by the lexer. This makes the token streams much smaller. The text of the blocks and the lexer
+     *      output stay the same; consecutive whitespace lines of a block become a single line. Default is
+     *      <code>true</code>.
+     */
+    public void setCoalesceLayout(boolean coalesceLayout) {
+        this.coalesceLayout = coalesceLayout;
+    }
+    
+    /**
+     * Stops all TypeChef processes that are currently idle. Should be called when no more files are
+     * going to be parsed; new processes are started if {@link #runOnFile(SourceFile)} is called again.
+     */
+    public void stopProcesses() {
+        List<TypeChefProcess> toStop;
+        synchronized (idleProcesses) {
+            toStop = new ArrayList<>(idleProcesses);
+            idleProcesses.clear();
+        }
+        for (TypeChefProcess process : toStop) {
+            process.close();
+        }
+    }
+    
     /**
      * Checks whether all parameters are set to sane values.
      * 
@@ -353,42 +530,22 @@ public class TypeChef {
         List<CToken> tokens = sourcefile.getTokens();
         
         if (tokens == null) {
-            Logger.INSTANCE.logWarning("No tokens for file " + sourcefile.getPath().getPath());
+            if (!streamBlocks) {
+                Logger.INSTANCE.logWarning("No tokens for file " + sourcefile.getPath().getPath());
+            }
+            // if streamBlocks is set, the blocks were already created in runOnFile()
             return;
         }
         
-        List<Block> blocks = new LinkedList<>();
-        Formula previous = null;
+        BlockBuilder builder = new BlockBuilder(sourceDir);
         for (CToken token : tokens) {
-            Formula pc = token.getPc();
-            String filename = "unkown";
-            if (token.getSourceName() != null) {
-                filename = token.getSourceName().replace("file ", "");
-            }
-            filename = Files.relativize(new File(filename), sourceDir);
-
-            boolean appendToPrevious = previous != null && blocks.size() > 0;
-            if (appendToPrevious) {
-                Block previousBlock = blocks.get(blocks.size() - 1);
-                appendToPrevious = filename.equals(previousBlock.getLocation());
-            }
-            if (appendToPrevious) {
-                appendToPrevious = pc.equals(previous);
-            }
-            
-            
-            if (appendToPrevious) {
-                blocks.get(blocks.size() - 1).addLine(token.getText());
-                
-            } else {
-                blocks.add(new Block(pc, filename, token.getLine()));
-                previous = pc;
-            }
+            builder.addToken(token.getText(), token.getPc(), token.getSourceName(), token.getLine());
         }
         
         sourcefile.setTokens(null); // TODO: maybe remove in future?
         
-        sourcefile.setBlocks(blocks);
+        sourcefile.setBlocks(builder.getBlocks());
+        sourcefile.setNumTokens(builder.getNumTokens());
     }
     
     private List<String> buildParameters(SourceFile file, File piOutput, File pcFile) {
@@ -402,6 +559,9 @@ public class TypeChef {
         params.add("--lex");
         params.add("--lexNoStdout");
         params.add("--no-analysis");
+        if (coalesceLayout) {
+            params.add(COALESCE_LAYOUT_PARAMETER);
+        }
         
 
         // Kconfig variables
@@ -458,55 +618,79 @@ public class TypeChef {
     }
     
     /**
-     * Runs a TypeChef process with the current configuration and the given output files.
+     * Runs a TypeChef process with the given parameters.
      * 
      * @param file The source file in the source code tree to run TypeChef on.
-     * @param piOutput The .pi file where TypeChef should write it's primary lexer output.
-     * @param pcFile The .pc file that should contain the presence condition of the given {@link SourceFile}.
-     * @param stdOut The file that should contain the standard output of TypeChef.
-     * @param stdErr The file that should contain the error output of TypeChef.
+     * @param params The parameters for TypeChef, as created by {@link #buildParameters(SourceFile, File, File)}.
      * @return The process' exit status.
      * 
      * @throws IOException If running the process fails.
-     * @throws IllegalArgumentException If any of the parameters of the current configuration is not set correctly.
      */
-    private int runTypeChef(final SourceFile file, File piOutput, File pcFile) throws IOException, IllegalArgumentException {
-        final List<String> params = buildParameters(file, piOutput, pcFile);
+    private int runTypeChef(final SourceFile file, List<String> params) throws IOException {
+        if (LOG_CALL_PARAMS && Logger.INSTANCE.isEnabled(Logger.Level.INFO)) {
+            Logger.INSTANCE.logInfo(params.toArray(new String[0]));
+        }
         
+        List<String> errors = new LinkedList<>();
+        BlockBuilder blockBuilder = streamBlocks ? new BlockBuilder(sourceDir) : null;
         
-        if (LOG_CALL_PARAMS) {
-            Logger.INSTANCE.logInfo(params.toArray(new String[0]));
+        boolean success;
+        if (callInSameVm) {
+            success = runInSameVm(file, params, errors, blockBuilder);
+        } else {
+            success = runInProcess(file, params, errors, blockBuilder);
+        }
+
+        if (!errors.isEmpty() && Logger.INSTANCE.isEnabled(Logger.Level.INFO)) {
+            String[] errorStr = new String[errors.size() + 1];
+            errorStr[0] = "Lexer errors:";
+            for (int i = 1; i < errorStr.length; i++) {
+                errorStr[i] = errors.get(i - 1);
+            }
+            Logger.INSTANCE.logInfo(errorStr);
         }
         
-        final ServerSocket serSock = new ServerSocket(0);
-        final List<String> errors = new LinkedList<>();
+        return success ? 0 : -1;
+    }
+    
+    /**
+     * Runs a {@link TypeChefRunner} in this JVM for the given file.
+     * 
+     * @param file The source file that is parsed. The resulting tokens are stored in it.
+     * @param params The parameters for TypeChef.
+     * @param errors Lexer errors reported by TypeChef are added to this list.
+     * @param blockBuilder If not <code>null</code>, then the tokens are folded into blocks while they are
+     *      received, and only the blocks are stored in the file.
+     * @return Whether the lexer succeeded.
+     * 
+     * @throws IOException If creating the socket for the communication fails.
+     */
+    private boolean runInSameVm(final SourceFile file, final List<String> params, final List<String> errors,
+            final BlockBuilder blockBuilder) throws IOException {
         
+        final ServerSocket serSock = new ServerSocket(0);
+        final boolean[] success = {false};
+
         Thread comm = new Thread("Comm of " + Thread.currentThread().getName()) {
             
-            @SuppressWarnings("unchecked")
             public void run() {
                 try {
                     Socket socket = serSock.accept();
                     
-                    ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
-                    ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+                    ProtocolWriter out = new ProtocolWriter(socket.getOutputStream());
+                    ProtocolReader in = new ProtocolReader(socket.getInputStream());
                     
-                    out.writeObject(params);
-                    
-                    Object tokenList = in.readObject();
-                    if (tokenList != null) {
-                        file.setTokens((List<CToken>) tokenList);
-                    }
-                    
-                    Object errorList = in.readObject();
-                    if (errorList != null) {
-                        errors.addAll((List<String>) errorList);
-                    }
+                    out.writeParameters(params);
+                    success[0] = in.readResult(file, errors, blockBuilder);
                     
+                    // the runner only handles this single file
+                    in.readKeepAlive();
+                    out.writeStop();
+
                     serSock.close();
                 } catch (EOFException e) {
                     Logger.INSTANCE.logWarning("TypeChefRunner exited without sending a result");
-                } catch (ClassNotFoundException | IOException e) {
+                } catch (IOException e) {
                     Logger.INSTANCE.logException("Exception", e);
                 }
             };
@@ -514,30 +698,11 @@ public class TypeChef {
         };
         comm.start();
         
-        if (CALL_IN_SAME_VM) {
-            Logger.INSTANCE.logWarning("Starting TypeChef in same JVM");
-            try {
-                TypeChefRunner.main(new String[] {String.valueOf(serSock.getLocalPort())});
-            } catch (Exception e) {
-                Logger.INSTANCE.logException("Exception in TypeChefRunner", e);
-            }
-        } else {
-            ProcessBuilder builder = new ProcessBuilder("java",
-                    "-Xmx20g",
-                    "-cp", System.getProperty("java.class.path"),
-                    TypeChefRunner.class.getName(),
-                    String.valueOf(serSock.getLocalPort()));
-            if (INHERIT_OUTPUT) {
-                builder.redirectError(Redirect.INHERIT);
-                builder.redirectOutput(Redirect.INHERIT);
-            }
-            Process process = builder.start();
-            
-            try {
-                process.waitFor();
-            } catch (InterruptedException e) {
-                Logger.INSTANCE.logException("Exception while waiting", e);
-            }
+        Logger.INSTANCE.logWarning("Starting TypeChef in same JVM");
+        try {
+            TypeChefRunner.main(new String[] {String.valueOf(serSock.getLocalPort())});
+        } catch (Exception e) {
+            Logger.INSTANCE.logException("Exception in TypeChefRunner", e);
         }
         
         try {
@@ -545,17 +710,150 @@ public class TypeChef {
         } catch (InterruptedException e) {
             Logger.INSTANCE.logException("Exception while waiting", e);
         }
+        return success[0];
+    }
+    
+    /**
+     * Runs TypeChef for the given file in one of the {@link #idleProcesses}, or in a new process if none is idle.
+     * 
+     * @param file The source file that is parsed. The resulting tokens are stored in it.
+     * @param params The parameters for TypeChef.
+     * @param errors Lexer errors reported by TypeChef are added to this list.
+     * @param blockBuilder If not <code>null</code>, then the tokens are folded into blocks while they are
+     *      received, and only the blocks are stored in the file.
+     * @return Whether the lexer succeeded.
+     * 
+     * @throws IOException If starting a new process fails.
+     */
+    private boolean runInProcess(SourceFile file, List<String> params, List<String> errors,
+            BlockBuilder blockBuilder) throws IOException {
         
-        if (!errors.isEmpty()) {
-            String[] errorStr = new String[errors.size() + 1];
-            errorStr[0] = "Lexer errors:";
-            for (int i = 1; i < errorStr.length; i++) {
-                errorStr[i] = errors.get(i - 1);
-            }
-            Logger.INSTANCE.logInfo(errorStr);
+        boolean success = false;
+        TypeChefProcess process;
+        synchronized (idleProcesses) {
+            process = idleProcesses.poll();
+        }
+        if (process == null) {
+            process = new TypeChefProcess(processMaxHeap, INHERIT_OUTPUT);
         }
         
-        return file.getTokens() != null ? 0 : -1;
+        try {
+            success = process.run(params, file, errors, blockBuilder);
+        } catch (IOException e) {
+            Logger.INSTANCE.logException("TypeChef process failed for " + file.getPath(), e);
+        }
+        
+        if (process.isAlive() && process.getNumFiles() < processMaxFiles) {
+            synchronized (idleProcesses) {
+                idleProcesses.add(process);
+            }
+        } else if (process.isAlive()) {
+            process.close();
+        }
+        return success;
+    }
+    
+    /**
+     * Moves a temporary file into the output archive; through the {@link #outputWriter}, if one is set.
+     * 
+     * @param file The path of the file in the archive.
+     * @param tmpFile The temporary file to move. Deleted after it is copied.
+     * 
+     * @throws IOException If copying the file into the archive fails.
+     */
+    private void moveToOutput(File file, File tmpFile) throws IOException {
+        if (outputWriter != null) {
+            outputWriter.moveFileToArchive(file, tmpFile);
+        } else {
+            output.copyFileToArchive(file, tmpFile);
+            tmpFile.delete();
+        }
+    }
+    
+    /**
+     * Creates the parameters for the key of the {@link #resultCache}: the temporary output files and the
+     * location of the source tree are replaced by placeholders, so that runs with the same inputs get the
+     * same key.
+     * 
+     * @param params The parameters for TypeChef, as created by {@link #buildParameters(SourceFile, File, File)}.
+     * @param piOutput The .pi file passed to {@link #buildParameters(SourceFile, File, File)}.
+     * @param pcFile The .pc file passed to {@link #buildParameters(SourceFile, File, File)}.
+     * @return The normalized parameters.
+     */
+    private List<String> getCacheParameters(List<String> params, File piOutput, File pcFile) {
+        String piPath = piOutput.getAbsolutePath();
+        // the --output parameter is the .pi file without the extension
+        String outputPath = piPath.substring(0, piPath.length() - 3);
+        String pcPath = pcFile.getAbsolutePath();
+        String sourcePath = sourceDir.getAbsolutePath();
+        
+        List<String> result = new ArrayList<>(params.size());
+        for (String param : params) {
+            result.add(param.replace(outputPath, "$OUTPUT").replace(pcPath, "$PC").replace(sourcePath, "$SOURCE"));
+        }
+        return result;
+    }
+    
+    /**
+     * Finds the files that the output of a TypeChef run depends on, besides the source file and the headers that
+     * it includes: the platform header, the open variables file and the headers that are included by parameters
+     * (the static includes and <code>-include</code> parameters from the {@link #kbuildParamFile}).
+     * 
+     * @param params The parameters for TypeChef, as created by {@link #buildParameters(SourceFile, File, File)}.
+     * @return The files that the output of the TypeChef run depends on.
+     */
+    private List<File> getCacheDependencies(List<String> params) {
+        List<File> result = new ArrayList<>();
+        result.add(platformHeader);
+        if (openVariablesFile != null) {
+            result.add(openVariablesFile);
+        }
+        for (int i = 0; i < params.size(); i++) {
+            String param = params.get(i);
+            if (param.startsWith("--include=")) {
+                result.add(getParameterFile(param.substring("--include=".length())));
+            } else if (param.equals("-include") && i + 1 < params.size()) {
+                result.add(getParameterFile(params.get(++i)));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Finds the directories that TypeChef searches headers in: the <code>--incdir</code> and <code>-I</code>
+     * parameters, the post include directories and the include directory of the system root.
+     * 
+     * @param params The parameters for TypeChef, as created by {@link #buildParameters(SourceFile, File, File)}.
+     * @return The include directories.
+     */
+    private List<File> getCacheIncludeDirs(List<String> params) {
+        List<File> result = new ArrayList<>();
+        for (int i = 0; i < params.size(); i++) {
+            String param = params.get(i);
+            if (param.startsWith("--incdir=")) {
+                result.add(getParameterFile(param.substring("--incdir=".length())));
+            } else if (param.equals("-I") && i + 1 < params.size()) {
+                result.add(getParameterFile(params.get(++i)));
+            } else if (param.startsWith("-I")) {
+                result.add(getParameterFile(param.substring(2)));
+            } else if (param.startsWith("--postIncludes=")) {
+                result.add(new File(systemRoot, param.substring("--postIncludes=".length())));
+            }
+        }
+        result.add(new File(systemRoot, "usr/include"));
+        return result;
+    }
+    
+    /**
+     * @param path A path from a parameter.
+     * @return The file; relative paths are relative to the source tree.
+     */
+    private File getParameterFile(String path) {
+        File result = new File(path);
+        if (!result.isAbsolute()) {
+            result = new File(sourceDir, path);
+        }
+        return result;
     }
     
     /**
@@ -563,7 +861,8 @@ public class TypeChef {
      * The output will be stored in the output .zip archive to be later used
      * by {@link #parseOutput(SourceFile)}.
      * 
-     * @param file The {@link SourceFile} in the source code tree that should be parsed.
+     * @param file The {@link SourceFile} in the source code tree that should be parsed. Its TypeChef duration
+     *      is set if TypeChef actually ran on it (see {@link SourceFile#getTypeChefDuration()}).
      * 
      * @return <code>true</code> if file was actually parsed, false if result is already present.
      * 
@@ -572,11 +871,14 @@ public class TypeChef {
      */
     public boolean runOnFile(SourceFile file) throws IOException, IllegalArgumentException {
         checkParameters();
+        file.setTypeChefDuration(-1);
         
         // check if we already got output
         File csvFile = new File(file.getPath().getPath() + ".csv");
-        if (output.containsFile(csvFile) && output.getSize(csvFile) > 0) {
-            Logger.INSTANCE.logInfo("Skipping " + file.getPath() + " because a .csv file is already present");
+        if (checkExistingOutput && output.containsFile(csvFile) && output.getSize(csvFile) > 0) {
+            if (Logger.INSTANCE.isEnabled(Logger.Level.INFO)) {
+                Logger.INSTANCE.logInfo("Skipping " + file.getPath() + " because a .csv file is already present");
+            }
             return false;
         }
         
@@ -584,11 +886,13 @@ public class TypeChef {
         if (dimacsModel != null && file.getPresenceCondition() != null
                 && !(file.getPresenceCondition() instanceof True)) {
             try {
-                SatSolver solver = new SatSolver(dimacsModel, "CONFIG_");
+                SatSolver solver = getSolver();
                 
-                if (!solver.isSatisfiable(file.getPresenceCondition(), false)) {
-                    Logger.INSTANCE.logInfo("Skipping " + file.getPath() + " because it's PC is not satisfiable:",
-                            file.getPresenceCondition().toString());
+                if (!solver.isSatisfiableIncremental(file.getPresenceCondition(), false)) {
+                    if (Logger.INSTANCE.isEnabled(Logger.Level.INFO)) {
+                        Logger.INSTANCE.logInfo("Skipping " + file.getPath() + " because it's PC is not satisfiable:",
+                                file.getPresenceCondition().toString());
+                    }
                     return false;
                 }
                 
@@ -604,15 +908,48 @@ public class TypeChef {
         File tmpPiOutput = File.createTempFile(name, ".pi", workingDir);
         File tmpPCfile = File.createTempFile(name, ".pc", workingDir);
         
-        int status = runTypeChef(file, tmpPiOutput, tmpPCfile);
+        List<String> params = buildParameters(file, tmpPiOutput, tmpPCfile);
+        
+        ResultCache cache = getResultCache();
+        String cacheKey = null;
+        boolean cached = false;
+        if (cache != null) {
+            cacheKey = cache.getConfigurationKey(file, getCacheParameters(params, tmpPiOutput, tmpPCfile));
+            try {
+                cached = cache.load(file, cacheKey, getCacheIncludeDirs(params));
+            } catch (IOException e) {
+                Logger.INSTANCE.logException("Can't read cached result for " + file.getPath(), e);
+            }
+        }
+        
+        int status;
+        if (cached) {
+            if (Logger.INSTANCE.isEnabled(Logger.Level.INFO)) {
+                Logger.INSTANCE.logInfo("Using cached result for " + file.getPath());
+            }
+            status = 0;
+            // the cache does not store the lexer output
+            tmpPiOutput.delete();
+            
+        } else {
+            long start = System.currentTimeMillis();
+            status = runTypeChef(file, params);
+            file.setTypeChefDuration(System.currentTimeMillis() - start);
+            
+            if (cache != null && status == 0 && !file.getBlocks().isEmpty()) {
+                try {
+                    cache.store(file, cacheKey, getCacheDependencies(params), getCacheIncludeDirs(params));
+                } catch (IOException e) {
+                    Logger.INSTANCE.logException("Can't store result for " + file.getPath() + " in cache", e);
+                }
+            }
+        }
 
         if (tmpPiOutput.isFile()) {
-            output.copyFileToArchive(piFile, tmpPiOutput);
-            tmpPiOutput.delete();
+            moveToOutput(piFile, tmpPiOutput);
         }
         if (tmpPCfile.isFile()) {
-            output.copyFileToArchive(new File(file.getPath().getPath() + ".pc"), tmpPCfile);
-            tmpPCfile.delete();
+            moveToOutput(new File(file.getPath().getPath() + ".pc"), tmpPCfile);
         }
         
         if (status != 0) {
@@ -0,0 +1,149 @@
+package de.uni_hildesheim.sse.kernel_miner.code.typechef;
+
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+
+import de.uni_hildesheim.sse.kernel_miner.code.SourceFile;
+import de.uni_hildesheim.sse.kernel_miner.util.Logger;
+
+/**
+ * A separate JVM running a {@link TypeChefRunner}. The process is kept alive between files, so that
+ * the JVM startup and class loading is only done once for many files.
+ * 
+ * @author Adam Krafczyk
+ */
+class TypeChefProcess {
+    
+    /**
+     * How long to wait for the started JVM to connect, in milliseconds.
+     */
+    private static final int CONNECT_TIMEOUT = 60000;
+    
+    private Process process;
+    
+    private Socket socket;
+    
+    private ProtocolWriter out;
+    
+    private ProtocolReader in;
+    
+    private int numFiles;
+    
+    private boolean alive;
+    
+    /**
+     * Starts a new JVM running a {@link TypeChefRunner} and connects to it.
+     * 
+     * @param maxHeap The maximum heap size of the new JVM, as passed to <code>-Xmx</code>.
+     * @param inheritOutput Whether the process should have the same stdout and stderr as this JVM.
+     * 
+     * @throws IOException If starting or connecting to the process fails.
+     */
+    public TypeChefProcess(String maxHeap, boolean inheritOutput) throws IOException {
+        ServerSocket serSock = new ServerSocket(0);
+        try {
+            serSock.setSoTimeout(CONNECT_TIMEOUT);
+            
+            ProcessBuilder builder = new ProcessBuilder("java",
+                    "-Xmx" + maxHeap,
+                    "-cp", System.getProperty("java.class.path"),
+                    TypeChefRunner.class.getName(),
+                    String.valueOf(serSock.getLocalPort()));
+            if (inheritOutput) {
+                builder.redirectError(Redirect.INHERIT);
+                builder.redirectOutput(Redirect.INHERIT);
+            }
+            process = builder.start();
+            
+            socket = serSock.accept();
+            out = new ProtocolWriter(socket.getOutputStream());
+            in = new ProtocolReader(socket.getInputStream());
+            alive = true;
+            
+        } catch (IOException e) {
+            if (process != null) {
+                process.destroy();
+            }
+            throw e;
+            
+        } finally {
+            serSock.close();
+        }
+    }
+    
+    /**
+     * Lets the process run TypeChef with the given parameters. The resulting tokens (or blocks) are stored
+     * in the given {@link SourceFile}.
+     * 
+     * @param params The parameters for TypeChef.
+     * @param file The file to store the resulting tokens in.
+     * @param errors Lexer errors reported by TypeChef are added to this list.
+     * @param blockBuilder If not <code>null</code>, then the tokens are folded into blocks while they are
+     *      received, and only the blocks are stored in the file.
+     * @return Whether the lexer succeeded.
+     * 
+     * @throws IOException If communicating with the process fails. The process is not alive anymore after this.
+     */
+    public boolean run(List<String> params, SourceFile file, List<String> errors, BlockBuilder blockBuilder)
+            throws IOException {
+        
+        boolean success;
+        numFiles++;
+        try {
+            out.writeParameters(params);
+            success = in.readResult(file, errors, blockBuilder);
+            alive = in.readKeepAlive();
+            
+        } catch (IOException e) {
+            alive = false;
+            close();
+            throw new IOException("Communication with TypeChef process failed", e);
+        }
+        
+        if (!alive) {
+            close();
+        }
+        return success;
+    }
+    
+    /**
+     * @return Whether this process can handle more files.
+     */
+    public boolean isAlive() {
+        return alive;
+    }
+    
+    /**
+     * @return The number of files that this process has handled.
+     */
+    public int getNumFiles() {
+        return numFiles;
+    }
+    
+    /**
+     * Stops the process. It finishes after the current file, if it is running one.
+     */
+    public void close() {
+        alive = false;
+        try {
+            out.writeStop();
+        } catch (IOException e) {
+            // process is probably already dead
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            Logger.INSTANCE.logException("Can't close socket of TypeChef process", e);
+        }
+        
+        try {
+            process.waitFor();
+        } catch (InterruptedException e) {
+            process.destroy();
+        }
+    }
+    
+}
@@ -1,8 +1,6 @@
 package de.uni_hildesheim.sse.kernel_miner.code.typechef;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.LinkedList;
@@ -27,60 +25,137 @@ import de.fosd.typechef.parser.c.CParser;
 import de.fosd.typechef.parser.c.CTypeContext;
 import de.fosd.typechef.parser.c.ParserMain;
 import de.fosd.typechef.parser.c.TranslationUnit;
-import de.uni_hildesheim.sse.kernel_miner.code.CToken;
+import de.uni_hildesheim.sse.kernel_miner.util.Logger;
 import de.uni_hildesheim.sse.kernel_miner.util.parser.ExpressionFormatException;
 import scala.Tuple2;
 
+/**
+ * Runs TypeChef on source files, as requested by {@link TypeChef}. The parameters are received over a socket
+ * and the result is sent back over the same socket. This runs in a separate JVM (or in the same JVM, for
+ * debugging).
+ * <p>
+ * A single runner handles any number of source files: it reads parameter sets until it is told to
+ * stop or the connection is closed. The result of each file consists of the tokens, the errors and a
+ * flag whether the runner can handle more files; it stops if its heap is nearly exhausted. The messages are
+ * written by a {@link ProtocolWriter}; tokens are converted and sent one by one, so no second list of tokens
+ * is created in this JVM. If running TypeChef fails, then no tokens and an error describing the failure are
+ * sent, so that {@link TypeChef} reports it.
+ * </p>
+ * 
+ * @author Adam Krafczyk
+ */
 public class TypeChefRunner {
     
+    /**
+     * If more than this fraction of the maximum heap is still used after a file is finished (and a garbage
+     * collection), then this runner stops, to be replaced by a fresh JVM.
+     */
+    private static final double MAX_HEAP_USAGE = 0.7;
+    
     private Socket socket;
     
-    private ObjectOutputStream out;
+    private ProtocolWriter out;
     
-    private ObjectInputStream in;
+    private ProtocolReader in;
     
     private FrontendOptionsWithConfigFiles config;
     
     private List<LexerToken> lexerTokens;
     
-    private List<CToken> tokens;
-    
     private List<LexerError> lexerErrors;
     
     private List<String> errors;
     
+    /**
+     * Whether layout tokens are coalesced by the lexer (see {@link TypeChef#COALESCE_LAYOUT_PARAMETER}).
+     */
+    private boolean coalesceLayout;
+    
     public TypeChefRunner(int port) throws IOException {
         socket = new Socket("localhost", port);
-        out = new ObjectOutputStream(socket.getOutputStream());
-        in = new ObjectInputStream(socket.getInputStream());
+        out = new ProtocolWriter(socket.getOutputStream());
+        in = new ProtocolReader(socket.getInputStream());
     }
     
+    /**
+     * Handles parameter sets until the runner is told to stop, the connection is closed or the heap
+     * is nearly exhausted.
+     * 
+     * @throws Exception If communicating with {@link TypeChef} fails.
+     */
     public void run() throws Exception {
         try {
-             readParameters();
-             runTypeChef();
-             if (lexerTokens != null) {
-                 parseAst();
-             }
-             convertResult();
-             sendResult();
+            boolean keepAlive = true;
+            List<String> params;
+            while (keepAlive && (params = in.readParameters()) != null) {
+                try {
+                    parseParameters(params);
+                    runTypeChef();
+                    if (lexerTokens != null) {
+                        parseAst();
+                    }
+                    convertResult();
+                } catch (Exception e) {
+                    Logger.INSTANCE.logException("Running TypeChef failed", e);
+                    setFailed("TypeChef failed: " + e);
+                } catch (OutOfMemoryError e) {
+                    // the heap state is not trustworthy anymore; report the failure and stop
+                    setFailed("TypeChef ran out of memory");
+                    Logger.INSTANCE.logException("Running TypeChef failed", e);
+                    keepAlive = false;
+                }
+                
+                sendResult();
+                
+                keepAlive = keepAlive && hasHeapLeft();
+                out.writeKeepAlive(keepAlive);
+            }
         } finally {
-            sendResult();
             close();
         }
     }
     
-    @SuppressWarnings("unchecked")
-    private void readParameters() throws ClassNotFoundException, IOException, OptionException {
+    /**
+     * Discards the tokens of the current file and adds an error, so that the failure is sent as the result.
+     * 
+     * @param error The description of the failure.
+     */
+    private void setFailed(String error) {
+        lexerTokens = null;
+        if (errors == null) {
+            errors = new ArrayList<>();
+        }
+        errors.add(error);
+    }
+    
+    /**
+     * Checks whether enough heap is left to handle another file. Must be called after the result of the
+     * previous file is sent.
+     * 
+     * @return Whether the heap usage is below {@link #MAX_HEAP_USAGE}.
+     */
+    private boolean hasHeapLeft() {
+        Runtime runtime = Runtime.getRuntime();
+        long limit = (long) (runtime.maxMemory() * MAX_HEAP_USAGE);
+        if (runtime.totalMemory() - runtime.freeMemory() < limit) {
+            return true;
+        }
         
-        List<String> params = (List<String>) in.readObject();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory() < limit;
+    }
+    
+    private void parseParameters(List<String> params) throws OptionException {
         config = new FrontendOptionsWithConfigFiles() {
             @Override
             public boolean isPrintLexingSuccess() {
                 return false;
             }
         };
-        config.parseOptions(params.toArray(new String[0]));
+        // our own parameter; TypeChef would reject it
+        List<String> typeChefParams = new ArrayList<>(params);
+        coalesceLayout = typeChefParams.remove(TypeChef.COALESCE_LAYOUT_PARAMETER);
+        config.parseOptions(typeChefParams.toArray(new String[0]));
     }
     
     private void runTypeChef() throws LexerException, IOException {
@@ -88,7 +163,9 @@ public class TypeChefRunner {
         Conditional<LexerResult> result = lexer.run(new VALexer.LexerFactory() {
             @Override
             public VALexer create(FeatureModel model) {
-                return new XtcPreprocessor(config.getMacroFilter(), model);
+                XtcPreprocessor preprocessor = new XtcPreprocessor(config.getMacroFilter(), model);
+                preprocessor.setCoalesceLayout(coalesceLayout);
+                return preprocessor;
             }
         }, config, true);
         
@@ -130,42 +207,58 @@ public class TypeChefRunner {
         }
     }
     
-    private void convertResult() throws ExpressionFormatException {
+    private void convertResult() {
         if (lexerErrors != null) {
             errors = new ArrayList<>(lexerErrors.size());
             for (LexerError error : lexerErrors) {
                 errors.add(error.getPositionStr() + " " + error.getMessage());
             }
         }
-        
+    }
+    
+    /**
+     * Sends the result of the current file and clears it. The tokens are converted while they are sent.
+     * If the presence condition of a token can't be converted, then no tokens are sent for this file.
+     */
+    private void sendResult() throws IOException {
         if (lexerTokens != null) {
-            tokens = new ArrayList<>(lexerTokens.size());
-            for (LexerToken original : lexerTokens) {
-                CToken converted = new CToken(original);
-                tokens.add(converted);
+            out.writeTokensStart();
+            try {
+                for (LexerToken token : lexerTokens) {
+                    out.writeToken(token);
+                }
+            } catch (ExpressionFormatException e) {
+                Logger.INSTANCE.logException("Can't convert presence condition", e);
+                out.writeTokensAborted();
+                out.writeError("Can't convert presence condition: " + e.getMessage());
             }
         }
-    }
-    
-    private void sendResult() {
-        try {
-            out.writeObject(tokens);
-            out.writeObject(errors);
-        } catch (IOException e) {
-            e.printStackTrace();
+        
+        if (errors != null) {
+            for (String error : errors) {
+                out.writeError(error);
+            }
         }
+        out.writeEnd();
+        
+        config = null;
+        lexerTokens = null;
+        lexerErrors = null;
+        errors = null;
     }
     
     private void close() {
         try {
             socket.close();
         } catch (IOException e) {
-            e.printStackTrace();
+            Logger.INSTANCE.logException("Can't close connection", e);
         }
     }
 
     public static void main(String[] args) throws Exception {
         Thread.currentThread().setName("TypeChefRunner");
+        // logs to stdout, which the parent process may inherit; failures are also sent as errors
+        Logger.init();
         int port = Integer.parseInt(args[0]);
         
         TypeChefRunner runner = new TypeChefRunner(port);
@@ -8,13 +8,13 @@ import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
-import java.util.Stack;
 
 import de.fosd.typechef.LexerToken;
 import de.fosd.typechef.VALexer;
@@ -29,7 +29,6 @@ import de.fosd.typechef.lexer.PreprocessorListener;
 import de.fosd.typechef.lexer.Warning;
 import de.fosd.typechef.lexer.macrotable.MacroFilter;
 import de.fosd.typechef.xtclexer.XtcFExprAnalyzer;
-import net.sf.javabdd.BDD;
 import xtc.LexerInterface;
 import xtc.XtcMacroFilter;
 import xtc.lang.cpp.CTag;
@@ -51,6 +50,16 @@ class XtcPreprocessor implements VALexer {
     private final XtcMacroFilter macroFilter;
     private final FeatureModel featureModel;
 
+    /**
+     * Whether consecutive layout tokens are merged into a single token (see {@link #setCoalesceLayout(boolean)}).
+     */
+    private boolean coalesceLayout = false;
+
+    /**
+     * A token that was read from the lexer while looking for the end of a run of layout tokens, and not returned yet.
+     */
+    private Syntax pending = null;
+
 
     private LexerInterface.ErrorHandler exceptionErrorHandler = new LexerInterface.ErrorHandler() {
         final LexerInterface.ErrorHandler defaultErrorHandler = new LexerInterface.ExceptionErrorHandler();
@@ -113,6 +122,17 @@ class XtcPreprocessor implements VALexer {
             throw new RuntimeException("unexpected input");
     }
 
+    /**
+     * In this mode, a run of consecutive layout tokens (whitespace, newlines) in the same file and conditional is
+     * returned as a single token with the concatenated text and the position of the first token of the run. The
+     * printed output and the positions of all other tokens stay the same, but the number of tokens shrinks a lot.
+     * Only useful if the layout tokens are not processed individually, e.g. if only presence conditions are
+     * extracted.
+     */
+    public void setCoalesceLayout(boolean coalesceLayout) {
+        this.coalesceLayout = coalesceLayout;
+    }
+
     @Override
     public void debugPreprocessorDone() {
         //nothing to do
@@ -177,7 +197,32 @@ class XtcPreprocessor implements VALexer {
 
 
     List<Iterator<Syntax>> lexers = null;
-    Stack<FeatureExpr> stack;
+
+    /**
+     * The stack of the enclosing conditionals: the presence condition of each frame, and whether it is satisfiable.
+     * The satisfiability is computed once when the frame is pushed, instead of once per token.
+     */
+    private FeatureExpr[] stack;
+    private boolean[] visible;
+    private int depth;
+
+    private void pushFrame(FeatureExpr condition) {
+        FeatureExpr parent = stack[depth - 1];
+        boolean parentVisible = visible[depth - 1];
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+            visible = Arrays.copyOf(visible, depth * 2);
+        }
+        stack[depth] = parent.and(condition);
+        // a frame inside an unsatisfiable frame can't be satisfiable
+        visible[depth] = parentVisible && stack[depth].isSatisfiable();
+        depth++;
+    }
+
+    private void popFrame() {
+        depth--;
+        stack[depth] = null;
+    }
 
     private List<Iterator<Syntax>> getCurrentLexer() throws FileNotFoundException {
         if (lexers == null) {
@@ -186,8 +231,11 @@ class XtcPreprocessor implements VALexer {
             if (file != null && file.getParentFile()!=null)
                 I.add(file.getParentFile().getAbsolutePath().replace('\\', '/'));
             lexers = LexerInterface.createLexer(commandLine.toString(), fileReader, file, exceptionErrorHandler, iquIncludes, I, sysIncludes, macroFilter);
-            stack = new Stack<FeatureExpr>();
-            stack.push(FeatureExprFactory.True());
+            stack = new FeatureExpr[16];
+            visible = new boolean[16];
+            stack[0] = FeatureExprFactory.True();
+            visible[0] = true;
+            depth = 1;
         }
         return lexers;
     }
@@ -196,43 +244,84 @@ class XtcPreprocessor implements VALexer {
     @Override
     public LexerToken getNextToken() throws IOException {
         Iterator<Syntax> lexer = getCurrentLexer().get(0);
-        Syntax s = lexer.next();
+        Syntax s = nextSyntax(lexer);
         while (s.kind() != Syntax.Kind.EOF) {
             if (s.kind() == Syntax.Kind.CONDITIONAL) {
                 Syntax.Conditional c = s.toConditional();
                 if (c.tag() == Syntax.ConditionalTag.START) {
-                    stack.push(stack.peek().and(translate(c.presenceCondition())));
-//                    System.out.println("#if " + stack.peek());
+                    pushFrame(translate(c.presenceCondition()));
+//                    System.out.println("#if " + stack[depth - 1]);
                 } else if (c.tag() == Syntax.ConditionalTag.NEXT) {
-                    stack.pop();
-                    stack.push(stack.peek().and(translate(c.presenceCondition())));
-//                    System.out.println("#elif " + stack.peek());
+                    popFrame();
+                    pushFrame(translate(c.presenceCondition()));
+//                    System.out.println("#elif " + stack[depth - 1]);
                 } else {
-                    stack.pop();
+                    popFrame();
 //                    System.out.println("#endif");
                 }
             }
 
 
             if (s.kind() == Syntax.Kind.CONDITIONAL)
-                return new XtcToken(s, stack.peek());
-            Boolean visible = stack.peek().isSatisfiable();
-            if (visible) {
+                return new XtcToken(s, stack[depth - 1]);
+            if (visible[depth - 1]) {
                 if (s.kind() == Syntax.Kind.LANGUAGE)
-                    return new XtcToken(s, stack.peek());
-                if (s.kind() == Syntax.Kind.LAYOUT)
-                    return new XtcToken(s, stack.peek());
+                    return new XtcToken(s, stack[depth - 1]);
+                if (s.kind() == Syntax.Kind.LAYOUT) {
+                    if (coalesceLayout)
+                        return coalesceLayout(lexer, s);
+                    return new XtcToken(s, stack[depth - 1]);
+                }
             }
 
-            s = lexer.next();
+            s = nextSyntax(lexer);
         }
         getCurrentLexer().remove(0);
-        if (getCurrentLexer().isEmpty())
+        if (getCurrentLexer().isEmpty()) {
+            if (translator != null)
+                translator.clear();
             return new EOFToken();
-        else
+        } else
             return getNextToken();
     }
 
+    private Syntax nextSyntax(Iterator<Syntax> lexer) {
+        if (pending != null) {
+            Syntax s = pending;
+            pending = null;
+            return s;
+        }
+        return lexer.next();
+    }
+
+    /**
+     * Reads all layout tokens following the given one, until a token of another kind or from another file is found.
+     * That token is kept in {@link #pending}. Tokens that are never returned (e.g. directives) don't end the run.
+     */
+    private LexerToken coalesceLayout(Iterator<Syntax> lexer, Syntax first) {
+        String file = first.getLocation() != null ? first.getLocation().file : null;
+        StringBuilder text = null;
+
+        Syntax s = lexer.next();
+        while (s.kind() != Syntax.Kind.EOF && s.kind() != Syntax.Kind.CONDITIONAL && s.kind() != Syntax.Kind.LANGUAGE) {
+            if (s.kind() == Syntax.Kind.LAYOUT) {
+                String sFile = s.getLocation() != null ? s.getLocation().file : null;
+                if (file == null ? sFile != null : !file.equals(sFile))
+                    break;
+                if (text == null)
+                    text = new StringBuilder(first.getTokenText());
+                text.append(s.getTokenText());
+            }
+            s = lexer.next();
+        }
+        pending = s;
+
+        XtcToken result = new XtcToken(first, stack[depth - 1]);
+        if (text != null)
+            result.text = text.toString();
+        return result;
+    }
+
     @Override
     public void setListener(PreprocessorListener preprocessorListener) {
         listener = preprocessorListener;
@@ -249,50 +338,18 @@ class XtcPreprocessor implements VALexer {
     }
 
 
-    public static FeatureExpr translate(PresenceConditionManager.PresenceCondition pc) {
-
-        BDD bdd = pc.getBDD();
-
-        List<?> allsat;
-//        boolean firstTerm;
-
-        if (bdd.isOne())
-            return FeatureExprLib.True();
-        if (bdd.isZero()) return FeatureExprLib.False();
-
-        allsat = (List<?>) bdd.allsat();
-
-        FeatureExpr result = FeatureExprLib.False();
-
-//        firstTerm = true;
-        for (Object o : allsat) {
-            byte[] sat;
-//            boolean first;
-
-            FeatureExpr innerResult = FeatureExprLib.True();
+    private BddTranslator translator;
 
-
-            sat = (byte[]) o;
-//            first = true;
-            for (int i = 0; i < sat.length; i++)
-                if (sat[i] == 0 || sat[i] == 1) {
-                    String fname = pc.getPCManager().vars.getName(i);
-
-                    FeatureExpr var;
-                    if (fname.length() > 10 && fname.substring(0, 9).equals("(defined ") && fname.substring(fname.length() - 1).equals(")"))
-                        var = FeatureExprLib.l().createDefinedExternal(fname.substring(9, fname.length() - 1));
-                    else
-                        var = new XtcFExprAnalyzer().resolveFExpr(fname);
-                    if (sat[i] == 0) var = var.not();
-
-                    innerResult = innerResult.and(var);
-                }
-
-            result = result.or(innerResult);
+    /**
+     * Translates the given presence condition with the cached {@link BddTranslator} of its manager.
+     */
+    FeatureExpr translate(PresenceConditionManager.PresenceCondition pc) {
+        if (translator == null || translator.getManager() != pc.getPCManager()) {
+            if (translator != null)
+                translator.clear();
+            translator = new BddTranslator(pc.getPCManager());
         }
-        return result;
-
-
+        return translator.translate(pc);
     }
 
 
@@ -308,6 +365,10 @@ class XtcPreprocessor implements VALexer {
         Syntax xtcToken;
         FeatureExpr fexpr;
         String sourceStr;
+        /**
+         * Replaces the text of the {@link #xtcToken}, if not <code>null</code>. Used for coalesced layout tokens.
+         */
+        String text;
 
 
         int localLine = Integer.MIN_VALUE;
@@ -492,6 +553,7 @@ class XtcPreprocessor implements VALexer {
 //                return " "+xtcToken.toString();
             String prefix = "";
             if (xtcToken.kind() == Syntax.Kind.CONDITIONAL) prefix = "\n";
+            if (text != null) return text;
             return prefix + xtcToken.getTokenText();
         }
 
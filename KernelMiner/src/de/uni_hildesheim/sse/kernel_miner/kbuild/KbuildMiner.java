@@ -4,8 +4,10 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import de.uni_hildesheim.sse.kernel_miner.code.SourceFile;
 import de.uni_hildesheim.sse.kernel_miner.util.Logger;
@@ -16,37 +18,152 @@ import de.uni_hildesheim.sse.kernel_miner.util.parser.VariableCache;
 
 public class KbuildMiner {
     
-    public static List<SourceFile> readOutput(File pcFile) throws IOException {
-        List<SourceFile> result = new LinkedList<>();
+    /**
+     * The number of lines that are parsed together in one task.
+     */
+    private static final int BATCH_SIZE = 64;
+    
+    /**
+     * Receives the {@link SourceFile}s read by {@link KbuildMiner#readOutput(File, SourceFileHandler)}.
+     */
+    public static interface SourceFileHandler {
         
-        BufferedReader in = new BufferedReader(new FileReader(pcFile));
+        /**
+         * Called for each {@link SourceFile}, after its presence condition is parsed. This is called from
+         * several threads in parallel, in no particular order.
+         * 
+         * @param file The source file that was read.
+         */
+        public void handle(SourceFile file);
         
+    }
+    
+    public static List<SourceFile> readOutput(File pcFile) throws IOException {
+        List<SourceFile> result = new ArrayList<>();
+        read(pcFile, null, result);
+        return result;
+    }
+    
+    /**
+     * Reads the given KbuildMiner output and passes each {@link SourceFile} to the handler as soon as its
+     * presence condition is parsed. The lines are read on the calling thread, while the presence conditions are
+     * parsed in a {@link ForkJoinPool}. This method returns after all files are passed to the handler.
+     * 
+     * @param pcFile The file containing the presence conditions generated by KbuildMiner.
+     * @param handler The handler to pass the {@link SourceFile}s to. Must be thread-safe.
+     * 
+     * @throws IOException If reading the file fails.
+     */
+    public static void readOutput(File pcFile, SourceFileHandler handler) throws IOException {
+        read(pcFile, handler, null);
+    }
+    
+    /**
+     * Reads the given KbuildMiner output.
+     * 
+     * @param pcFile The file containing the presence conditions generated by KbuildMiner.
+     * @param handler The handler to pass parsed {@link SourceFile}s to, or <code>null</code>.
+     * @param result A list to add all {@link SourceFile}s to in the order of the file, or <code>null</code>.
+     * 
+     * @throws IOException If reading the file fails.
+     */
+    private static void read(File pcFile, SourceFileHandler handler, List<SourceFile> result) throws IOException {
+        // the parser does not keep any state between calls, so the pool threads can share it
         VariableCache cache = new VariableCache();
         Parser<Formula> pcParser = new Parser<Formula>(new KbuildMinerPcGrammar(cache));
         
-        String line;
-        while ((line = in.readLine()) != null) {
-            String filename = line.substring(0, line.indexOf(':'));
-            SourceFile file = new SourceFile(new File(filename));
-            result.add(file);
-            
-            String pc = line.substring(filename.length() + 2);
+        ForkJoinPool pool = new ForkJoinPool();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        
+        try (BufferedReader in = new BufferedReader(new FileReader(pcFile))) {
+            List<SourceFile> files = new ArrayList<>(BATCH_SIZE);
+            List<String> pcs = new ArrayList<>(BATCH_SIZE);
             
-            if (pc.contains("InvalidExpression()")) {
-                Logger.INSTANCE.logWarning("Presence condition for file " + filename + " is invalid");
+            String line;
+            while ((line = in.readLine()) != null) {
+                int colonIndex = line.indexOf(':');
+                if (colonIndex <= 0 || colonIndex + 2 > line.length()) {
+                    Logger.INSTANCE.logError("Invalid line in KbuildMiner output:", line);
+                    continue;
+                }
                 
-            } else {
-                try {
-                    file.setPresenceCondition(pcParser.parse(pc));
-                } catch (ExpressionFormatException e) {
-                    Logger.INSTANCE.logException("Couldn't parse expression \"" + pc + "\"", e);
+                String filename = line.substring(0, colonIndex);
+                SourceFile file = new SourceFile(new File(filename));
+                if (result != null) {
+                    result.add(file);
                 }
+                
+                files.add(file);
+                pcs.add(line.substring(colonIndex + 2));
+                
+                if (files.size() == BATCH_SIZE) {
+                    tasks.add(pool.submit(new ParseTask(pcParser, files, pcs, handler)));
+                    files = new ArrayList<>(BATCH_SIZE);
+                    pcs = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            
+            if (!files.isEmpty()) {
+                tasks.add(pool.submit(new ParseTask(pcParser, files, pcs, handler)));
             }
+            
+        } finally {
+            // wait for the tasks that are already submitted, even if reading failed
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+            pool.shutdown();
         }
+    }
+    
+    /**
+     * Parses the presence conditions of a batch of {@link SourceFile}s.
+     */
+    private static class ParseTask implements Runnable {
         
-        in.close();
+        private Parser<Formula> pcParser;
+        
+        private List<SourceFile> files;
+        
+        private List<String> pcs;
+        
+        private SourceFileHandler handler;
+        
+        public ParseTask(Parser<Formula> pcParser, List<SourceFile> files, List<String> pcs,
+                SourceFileHandler handler) {
+            this.pcParser = pcParser;
+            this.files = files;
+            this.pcs = pcs;
+            this.handler = handler;
+        }
+        
+        @Override
+        public void run() {
+            for (int i = 0; i < files.size(); i++) {
+                SourceFile file = files.get(i);
+                String pc = pcs.get(i);
+                
+                if (pc.contains("InvalidExpression()")) {
+                    Logger.INSTANCE.logWarning("Presence condition for file " + file.getPath() + " is invalid");
+                    
+                } else {
+                    try {
+                        file.setPresenceCondition(pcParser.parse(pc));
+                    } catch (ExpressionFormatException e) {
+                        Logger.INSTANCE.logException("Couldn't parse expression \"" + pc + "\"", e);
+                    }
+                }
+                
+                if (handler != null) {
+                    try {
+                        handler.handle(file);
+                    } catch (RuntimeException e) {
+                        Logger.INSTANCE.logException("Exception in handler for file " + file.getPath(), e);
+                    }
+                }
+            }
+        }
         
-        return result;
     }
-
+    
 }
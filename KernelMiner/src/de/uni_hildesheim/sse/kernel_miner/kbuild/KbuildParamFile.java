@@ -14,41 +14,117 @@ import de.uni_hildesheim.sse.kernel_miner.util.Logger;
 
 public class KbuildParamFile {
     
-    private Map<File, List<String>> parameters;
-
+    /**
+     * The root of a trie over the path segments of the entries in the file.
+     */
+    private Node root;
+    
     private File sourceDir;
     
+    /**
+     * How often the parameters of a node were resolved since the file was read.
+     */
+    private int numResolved;
+    
     public KbuildParamFile(File file) throws IOException {
-        parameters = new HashMap<>();
+        root = new Node(null);
         readFile(file);
     }
     
-    public void setSourceDir(File sourceDir) {
-        this.sourceDir = sourceDir;
+    /**
+     * Sets the source directory that <code>$srcPath</code> is resolved to. The cached parameters are only
+     * cleared if the directory changes, so this is cheap if it is called with the same directory for each file.
+     * 
+     * @param sourceDir The source directory.
+     */
+    public synchronized void setSourceDir(File sourceDir) {
+        if (sourceDir == null ? this.sourceDir != null : !sourceDir.equals(this.sourceDir)) {
+            this.sourceDir = sourceDir;
+            root.clearResolved();
+        }
     }
     
-    public List<String> getExtraParameters(SourceFile file) {
-        List<String> result = new ArrayList<>();
-        
-        for (Map.Entry<File, List<String>> entry : parameters.entrySet()) {
-            if (file.getPath().getPath().startsWith(entry.getKey().getPath())) {
-                result.addAll(entry.getValue());
+    /**
+     * Returns the parameters for the given source file. These are the parameters of all entries
+     * that are parent directories of the file (or the file itself), starting with the top-most directory.
+     * 
+     * @param file The source file to get the parameters for.
+     * @return A new list with the parameters, with <code>$srcPath</code> resolved.
+     */
+    public synchronized List<String> getExtraParameters(SourceFile file) {
+        Node node = root;
+        for (String segment : getSegments(file.getPath())) {
+            Node child = node.children.get(segment);
+            if (child == null) {
+                break;
             }
+            node = child;
         }
         
-        for (int i = 0; i < result.size(); i++) {
-            String param = result.get(i);
+        return new ArrayList<>(getResolvedParameters(node));
+    }
+    
+    /**
+     * Returns the parameters of the given node and all of its parents, with variables resolved.
+     * The result is cached in the node, until the source directory changes.
+     * 
+     * @param node The node to get the parameters for.
+     * @return The resolved parameters. Must not be modified.
+     */
+    private List<String> getResolvedParameters(Node node) {
+        if (node.resolved == null) {
+            List<String> result = new ArrayList<>();
+            if (node.parent != null) {
+                result.addAll(getResolvedParameters(node.parent));
+            }
+            for (String param : node.parameters) {
+                result.add(resolve(param));
+            }
+            node.resolved = result;
+            numResolved++;
+        }
+        return node.resolved;
+    }
+    
+    /**
+     * @return How often the parameters of a node were resolved, i.e. how often the cache in the nodes missed.
+     */
+    synchronized int getNumResolved() {
+        return numResolved;
+    }
+    
+    private String resolve(String param) {
+        if (param.indexOf('$') != -1) {
+            if (sourceDir != null) {
+                param = param.replace("$srcPath", sourceDir.getPath().toString());
+            } else if (param.contains("$srcPath")) {
+                Logger.INSTANCE.logError("sourceDir not specified; can't resolve $srcPath");
+            }
+            
             if (param.indexOf('$') != -1) {
-                if (sourceDir != null) {
-                    param = param.replace("$srcPath", sourceDir.getPath().toString());
-                } else if (param.contains("$srcPath")) {
-                    Logger.INSTANCE.logError("sourceDir not specified; can't resolve $srcPath");
-                }
-                
-                if (param.indexOf('$') != -1) {
-                    Logger.INSTANCE.logWarning("Unkown variable in KbuildParamFile:", param);
+                Logger.INSTANCE.logWarning("Unkown variable in KbuildParamFile:", param);
+            }
+        }
+        return param;
+    }
+    
+    /**
+     * Splits the given path into its segments. Empty segments and <code>.</code> are skipped.
+     * 
+     * @param path The path to split.
+     * @return The segments of the path.
+     */
+    private static List<String> getSegments(File path) {
+        List<String> result = new ArrayList<>();
+        String str = path.getPath();
+        
+        int start = 0;
+        for (int i = 0; i <= str.length(); i++) {
+            if (i == str.length() || str.charAt(i) == '/' || str.charAt(i) == File.separatorChar) {
+                if (i > start && !(i == start + 1 && str.charAt(start) == '.')) {
+                    result.add(str.substring(start, i));
                 }
-                result.set(i, param);
+                start = i + 1;
             }
         }
         
@@ -80,12 +156,16 @@ public class KbuildParamFile {
         }
         line = line.substring(colonIndex + 1);
         
-        List<String> params = readParams(line);
-        if (!parameters.containsKey(path)) {
-            parameters.put(path, params);
-        } else {
-            parameters.get(path).addAll(params);
+        Node node = root;
+        for (String segment : getSegments(path)) {
+            Node child = node.children.get(segment);
+            if (child == null) {
+                child = new Node(node);
+                node.children.put(segment, child);
+            }
+            node = child;
         }
+        node.parameters.addAll(readParams(line));
     }
     
     private List<String> readParams(String line) {
@@ -127,4 +207,36 @@ public class KbuildParamFile {
         return result;
     }
     
+    /**
+     * A node in the trie of paths. Each node represents one path segment.
+     */
+    private static class Node {
+        
+        private Node parent;
+        
+        private Map<String, Node> children;
+        
+        private List<String> parameters;
+        
+        /**
+         * The parameters of this node and all parents, with variables resolved. <code>null</code> if not
+         * yet computed.
+         */
+        private List<String> resolved;
+        
+        public Node(Node parent) {
+            this.parent = parent;
+            children = new HashMap<>();
+            parameters = new ArrayList<>();
+        }
+        
+        public void clearResolved() {
+            resolved = null;
+            for (Node child : children.values()) {
+                child.clearResolved();
+            }
+        }
+        
+    }
+    
 }
@@ -0,0 +1,189 @@
+package de.uni_hildesheim.sse.kernel_miner.run;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.uni_hildesheim.sse.kernel_miner.util.Logger;
+
+/**
+ * Limits how many TypeChef runs are executed in parallel. The limit adapts to the current load:
+ * <ul>
+ *      <li>If the free heap (measured after the last garbage collection) drops below {@link #LOW_HEADROOM},
+ *      then the limit is halved. If it is above {@link #HIGH_HEADROOM}, then the limit grows by one after each
+ *      finished run, up to the configured maximum.</li>
+ *      <li>Runs that take much longer than the average run are considered heavy. Each heavy run that is still in
+ *      progress lowers the limit by one, so that no new runs compete with it for memory.</li>
+ * </ul>
+ * <p>
+ * The heap is measured in this JVM, so adapting the limit only makes sense if TypeChef runs in it; TypeChef
+ * processes in separate JVMs are not considered. Only the TypeChef runs are limited; the number of parser
+ * threads is fixed.
+ * </p>
+ * 
+ * @author Adam Krafczyk
+ */
+class AdaptiveLimiter {
+    
+    /**
+     * If the fraction of free heap is below this, then the limit is decreased.
+     */
+    static final double LOW_HEADROOM = 0.2;
+    
+    /**
+     * If the fraction of free heap is above this, then the limit is increased.
+     */
+    static final double HIGH_HEADROOM = 0.4;
+    
+    /**
+     * A run is heavy if it takes longer than this factor times the average duration.
+     */
+    private static final int HEAVY_FACTOR = 4;
+    
+    /**
+     * Runs shorter than this (in milliseconds) are never considered heavy.
+     */
+    private static final long MIN_HEAVY_DURATION = 60000;
+    
+    /**
+     * How long (in milliseconds) waiting threads sleep before they check again whether heavy runs changed the limit.
+     */
+    private static final long RECHECK_INTERVAL = 1000;
+    
+    private int maxLimit;
+    
+    private boolean adaptive;
+    
+    private int limit;
+    
+    /**
+     * The start times of the runs in progress.
+     */
+    private List<Long> running;
+    
+    /**
+     * The exponentially weighted average duration of finished runs, in milliseconds.
+     */
+    private double averageDuration;
+    
+    private int numFinished;
+    
+    /**
+     * Creates a limiter.
+     * 
+     * @param maxLimit The maximum number of parallel runs.
+     * @param adaptive Whether the limit should adapt to the load. If <code>false</code>, then the limit is
+     *      always <code>maxLimit</code>.
+     */
+    public AdaptiveLimiter(int maxLimit, boolean adaptive) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.adaptive = adaptive;
+        this.limit = this.maxLimit;
+        this.running = new ArrayList<>();
+    }
+    
+    /**
+     * Waits until another run may start.
+     * 
+     * @return The start time of the run; this must be passed to {@link #release(long)} when the run is finished.
+     */
+    public synchronized long acquire() {
+        while (running.size() >= getEffectiveLimit(System.currentTimeMillis())) {
+            try {
+                wait(RECHECK_INTERVAL);
+            } catch (InterruptedException e) {
+            }
+        }
+        
+        long start = System.currentTimeMillis();
+        running.add(start);
+        return start;
+    }
+    
+    /**
+     * Marks a run as finished.
+     * 
+     * @param start The value returned by {@link #acquire()} for this run.
+     */
+    public synchronized void release(long start) {
+        running.remove(Long.valueOf(start));
+        
+        long duration = System.currentTimeMillis() - start;
+        if (numFinished == 0) {
+            averageDuration = duration;
+        } else {
+            averageDuration = 0.8 * averageDuration + 0.2 * duration;
+        }
+        numFinished++;
+        
+        adjust(getHeapHeadroom());
+        notifyAll();
+    }
+    
+    /**
+     * Adjusts the limit to the given heap headroom.
+     * 
+     * @param headroom The fraction of the maximum heap that is free, between 0 and 1.
+     */
+    synchronized void adjust(double headroom) {
+        if (!adaptive) {
+            return;
+        }
+        
+        if (headroom < LOW_HEADROOM && limit > 1) {
+            limit = Math.max(1, limit / 2);
+            Logger.INSTANCE.logInfo("Reducing number of parallel TypeChef runs to " + limit,
+                    "Free heap: " + Math.round(headroom * 100) + "%");
+                    
+        } else if (headroom > HIGH_HEADROOM && limit < maxLimit) {
+            limit++;
+            Logger.INSTANCE.logInfo("Increasing number of parallel TypeChef runs to " + limit);
+        }
+    }
+    
+    /**
+     * @return The current limit, without considering heavy runs.
+     */
+    synchronized int getLimit() {
+        return limit;
+    }
+    
+    /**
+     * Calculates the limit, reduced by the heavy runs in progress.
+     * 
+     * @param now The current time.
+     * @return The number of runs that may be in progress.
+     */
+    synchronized int getEffectiveLimit(long now) {
+        int result = limit;
+        if (adaptive && numFinished > 0) {
+            double heavyDuration = Math.max(MIN_HEAVY_DURATION, HEAVY_FACTOR * averageDuration);
+            for (long start : running) {
+                if (now - start > heavyDuration) {
+                    result--;
+                }
+            }
+        }
+        return Math.max(1, result);
+    }
+    
+    /**
+     * @return The fraction of the maximum heap that was free after the last garbage collection.
+     */
+    private static double getHeapHeadroom() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                MemoryUsage usage = pool.getCollectionUsage();
+                if (usage != null) {
+                    used += usage.getUsed();
+                }
+            }
+        }
+        return 1.0 - (double) used / Runtime.getRuntime().maxMemory();
+    }
+    
+}
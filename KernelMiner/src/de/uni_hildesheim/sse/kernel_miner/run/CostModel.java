@@ -0,0 +1,223 @@
+package de.uni_hildesheim.sse.kernel_miner.run;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.uni_hildesheim.sse.kernel_miner.code.SourceFile;
+import de.uni_hildesheim.sse.kernel_miner.util.Logger;
+
+/**
+ * Estimates how long TypeChef will take for a source file, so that the most expensive files can be started
+ * first (longest processing time first). This keeps a single slow file from starting last and delaying the
+ * end of the whole run.
+ * <p>
+ * If a duration was recorded for the file in an earlier run, then this is used as the estimate. Otherwise, the
+ * estimate is based on the size of the file and the number of <code>#include</code> directives in it, scaled
+ * by the ratio of recorded durations to these sizes of the files in the history. The ratio is calculated when the
+ * history is read, so that all estimates are in milliseconds, regardless of the order in which the files are
+ * estimated. Without a history, the sizes themselves are used as estimates.
+ * </p>
+ * <p>
+ * The history file contains one line per finished run, in the format <code>path;milliseconds</code>. New
+ * durations are appended while the extraction runs; later lines override earlier ones.
+ * </p>
+ * 
+ * @author Adam Krafczyk
+ */
+class CostModel {
+    
+    private File sourceDir;
+    
+    private Map<File, Long> history;
+    
+    private Writer historyWriter;
+    
+    /**
+     * The estimated costs of all files passed to {@link #estimate(SourceFile)}.
+     */
+    private Map<File, Double> estimates;
+    
+    /**
+     * The factor that converts sizes into milliseconds; 0 if no durations were recorded.
+     */
+    private double scale;
+    
+    /**
+     * Creates a cost model that does not use or record durations of runs.
+     * 
+     * @param sourceDir The directory that the paths of the source files are relative to.
+     */
+    public CostModel(File sourceDir) {
+        this.sourceDir = sourceDir;
+        this.history = new HashMap<>();
+        this.estimates = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Creates a cost model.
+     * 
+     * @param sourceDir The directory that the paths of the source files are relative to.
+     * @param historyFile The file with the durations of earlier runs, or <code>null</code> if durations should not
+     *      be recorded. Does not have to exist yet.
+     * 
+     * @throws IOException If reading or opening the history file fails.
+     */
+    public CostModel(File sourceDir, File historyFile) throws IOException {
+        this(sourceDir);
+        
+        if (historyFile != null) {
+            if (historyFile.isFile()) {
+                readHistory(historyFile);
+                calculateScale();
+            }
+            historyWriter = new BufferedWriter(new FileWriter(historyFile, true));
+        }
+    }
+    
+    private void readHistory(File historyFile) throws IOException {
+        try (BufferedReader in = new BufferedReader(new FileReader(historyFile))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int index = line.lastIndexOf(';');
+                if (index <= 0) {
+                    continue;
+                }
+                try {
+                    history.put(new File(line.substring(0, index)), Long.parseLong(line.substring(index + 1)));
+                } catch (NumberFormatException e) {
+                    Logger.INSTANCE.logWarning("Invalid line in cost history: " + line);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Calculates the {@link #scale} from the sizes of the files in the history.
+     */
+    private void calculateScale() {
+        double sumDurations = 0;
+        double sumSizes = 0;
+        for (Map.Entry<File, Long> entry : history.entrySet()) {
+            double size = getSize(entry.getKey());
+            // files that don't exist anymore have no size to relate the duration to
+            if (size > 0) {
+                sumDurations += entry.getValue();
+                sumSizes += size;
+            }
+        }
+        if (sumSizes > 0) {
+            scale = sumDurations / sumSizes;
+        }
+    }
+    
+    /**
+     * Estimates the cost of the given file. The estimate is stored, so that {@link #getComparator()} can use it.
+     * 
+     * @param file The source file to estimate.
+     * @return The estimated duration in milliseconds; the unit is only meaningful if durations were recorded.
+     */
+    public double estimate(SourceFile file) {
+        double result;
+        Long recorded = history.get(file.getPath());
+        if (recorded != null) {
+            result = recorded;
+            
+        } else if (scale > 0) {
+            result = getSize(file.getPath()) * scale;
+            
+        } else {
+            result = getSize(file.getPath());
+        }
+        
+        estimates.put(file.getPath(), result);
+        return result;
+    }
+    
+    /**
+     * Records the duration of a finished TypeChef run in the history file.
+     * 
+     * @param file The source file that TypeChef ran on.
+     * @param duration The duration in milliseconds.
+     */
+    public synchronized void record(SourceFile file, long duration) {
+        if (historyWriter != null) {
+            try {
+                historyWriter.write(file.getPath().getPath() + ";" + duration + "\n");
+                historyWriter.flush();
+            } catch (IOException e) {
+                Logger.INSTANCE.logException("Can't write cost history", e);
+            }
+        }
+    }
+    
+    /**
+     * Closes the history file.
+     */
+    public synchronized void close() {
+        if (historyWriter != null) {
+            try {
+                historyWriter.close();
+            } catch (IOException e) {
+                Logger.INSTANCE.logException("Can't close cost history", e);
+            }
+            historyWriter = null;
+        }
+    }
+    
+    /**
+     * @return A comparator that sorts files with higher estimated costs first. Files that were not estimated
+     *      are sorted last.
+     */
+    public Comparator<SourceFile> getComparator() {
+        return new Comparator<SourceFile>() {
+            
+            @Override
+            public int compare(SourceFile o1, SourceFile o2) {
+                return Double.compare(getEstimate(o2), getEstimate(o1));
+            }
+            
+        };
+    }
+    
+    private double getEstimate(SourceFile file) {
+        Double estimate = estimates.get(file.getPath());
+        return estimate != null ? estimate : -1;
+    }
+    
+    /**
+     * Calculates the size of a source file: the length of the file multiplied with one plus the number of
+     * <code>#include</code> directives in it, since each included header has to be preprocessed, too.
+     * 
+     * @param path The path of the source file, relative to the source directory.
+     * @return The size of the file. 0 if it can't be read.
+     */
+    private double getSize(File path) {
+        File file = new File(sourceDir, path.getPath());
+        long length = file.length();
+        int includes = 0;
+        
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.startsWith("#") && line.substring(1).trim().startsWith("include")) {
+                    includes++;
+                }
+            }
+        } catch (IOException e) {
+            // the file may not exist (e.g. generated files); TypeChef will report this
+        }
+        
+        return (double) length * (1 + includes);
+    }
+    
+}
@@ -0,0 +1,223 @@
+package de.uni_hildesheim.sse.kernel_miner.run;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.uni_hildesheim.sse.kernel_miner.code.SourceFile;
+import de.uni_hildesheim.sse.kernel_miner.util.Logger;
+
+/**
+ * An append-only journal of the files that an extraction has processed. Each finished file gets one line:
+ * <code>path;status;milliseconds;tokens;blocks;fingerprint</code>. Later lines override earlier ones for the
+ * same path. A run that crashed leaves at most an incomplete last line, which is ignored when the manifest is
+ * read again.
+ * <p>
+ * The fingerprint is a hash over the content of the source file and its presence condition. A restarted
+ * extraction skips files that were completed with the same fingerprint, and retries all others.
+ * </p>
+ * 
+ * @author Adam Krafczyk
+ */
+class RunManifest {
+    
+    /**
+     * The outcome of processing a single file.
+     */
+    public static enum Status {
+        
+        /**
+         * The blocks of the file were written to the output.
+         */
+        DONE,
+        
+        /**
+         * TypeChef was not run on the file, e.g. because its presence condition is not satisfiable.
+         */
+        SKIPPED,
+        
+        /**
+         * TypeChef ran, but didn't produce any blocks. Usually, the lexer failed.
+         */
+        NO_BLOCKS,
+        
+        /**
+         * Running TypeChef or writing the output failed.
+         */
+        FAILED;
+        
+        /**
+         * @return Whether a file with this status does not need to be processed again.
+         */
+        public boolean isCompleted() {
+            return this == DONE || this == SKIPPED;
+        }
+        
+    }
+    
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    
+    private boolean existed;
+    
+    private Map<File, Status> statuses;
+    
+    private Map<File, String> fingerprints;
+    
+    private Writer out;
+    
+    /**
+     * Reads the given manifest, and opens it to append new entries.
+     * 
+     * @param file The manifest file. Does not have to exist yet.
+     * 
+     * @throws IOException If reading or opening the manifest fails.
+     */
+    public RunManifest(File file) throws IOException {
+        statuses = new HashMap<>();
+        fingerprints = new HashMap<>();
+        
+        existed = file.isFile();
+        if (existed) {
+            read(file);
+        }
+        
+        out = new BufferedWriter(new FileWriter(file, true));
+        if (existed && !endsWithNewline(file)) {
+            // terminate the incomplete line of a crashed run, so that the next entry starts on a new line
+            out.write('\n');
+        }
+    }
+    
+    private static boolean endsWithNewline(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if (in.length() == 0) {
+                return true;
+            }
+            in.seek(in.length() - 1);
+            return in.read() == '\n';
+        }
+    }
+    
+    private void read(File file) throws IOException {
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] parts = line.split(";");
+                if (parts.length != 6) {
+                    continue;
+                }
+                try {
+                    File path = new File(parts[0]);
+                    statuses.put(path, Status.valueOf(parts[1]));
+                    fingerprints.put(path, parts[5]);
+                } catch (IllegalArgumentException e) {
+                    // incomplete line of a crashed run
+                }
+            }
+        }
+    }
+    
+    /**
+     * @return Whether the manifest file existed before this run, i.e. whether the results of an earlier run
+     *      are recorded in it.
+     */
+    public boolean existed() {
+        return existed;
+    }
+    
+    /**
+     * Checks whether the given file was completed by an earlier run, and has not changed since.
+     * 
+     * @param file The file to check.
+     * @param fingerprint The current fingerprint of the file, as calculated by {@link #getFingerprint(File, SourceFile)}.
+     * @return Whether the file does not need to be processed again.
+     */
+    public synchronized boolean isCompleted(SourceFile file, String fingerprint) {
+        Status status = statuses.get(file.getPath());
+        return status != null && status.isCompleted() && fingerprint.equals(fingerprints.get(file.getPath()));
+    }
+    
+    /**
+     * Appends an entry for the given file.
+     * 
+     * @param file The file that was processed.
+     * @param status The outcome of the processing.
+     * @param duration How long TypeChef ran for the file, in milliseconds.
+     * @param fingerprint The fingerprint of the file, as calculated by {@link #getFingerprint(File, SourceFile)}.
+     */
+    public synchronized void record(SourceFile file, Status status, long duration, String fingerprint) {
+        statuses.put(file.getPath(), status);
+        fingerprints.put(file.getPath(), fingerprint);
+        
+        try {
+            out.write(file.getPath().getPath() + ";" + status + ";" + duration + ";" + file.getNumTokens() + ";"
+                    + file.getBlocks().size() + ";" + fingerprint + "\n");
+            // flush every entry, so that a crash only loses the entry that is written
+            out.flush();
+        } catch (IOException e) {
+            Logger.INSTANCE.logException("Can't write run manifest", e);
+        }
+    }
+    
+    /**
+     * Closes the manifest file.
+     */
+    public synchronized void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            Logger.INSTANCE.logException("Can't close run manifest", e);
+        }
+    }
+    
+    /**
+     * Calculates a fingerprint over the content and the presence condition of the given file.
+     * 
+     * @param sourceDir The directory that the path of the file is relative to.
+     * @param file The source file.
+     * @return A hex string representing the inputs of the file. <code>"-"</code> if the file can't be read.
+     */
+    public static String getFingerprint(File sourceDir, SourceFile file) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support MD5
+            throw new RuntimeException(e);
+        }
+        
+        try (InputStream in = new FileInputStream(new File(sourceDir, file.getPath().getPath()))) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            return "-";
+        }
+        
+        digest.update((byte) '\n');
+        if (file.getPresenceCondition() != null) {
+            digest.update(file.getPresenceCondition().toString().getBytes(CHARSET));
+        }
+        
+        StringBuilder result = new StringBuilder();
+        for (byte b : digest.digest()) {
+            result.append(String.format("%02x", b));
+        }
+        return result.toString();
+    }
+    
+}
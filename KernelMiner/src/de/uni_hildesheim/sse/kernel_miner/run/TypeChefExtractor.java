@@ -3,16 +3,20 @@ package de.uni_hildesheim.sse.kernel_miner.run;
 import java.io.File;
 import java.io.IOException;
 import java.lang.Thread.UncaughtExceptionHandler;
-import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.uni_hildesheim.sse.kernel_miner.code.Block;
 import de.uni_hildesheim.sse.kernel_miner.code.SourceFile;
 import de.uni_hildesheim.sse.kernel_miner.code.typechef.TypeChef;
 import de.uni_hildesheim.sse.kernel_miner.kbuild.KbuildMiner;
 import de.uni_hildesheim.sse.kernel_miner.util.Logger;
-import de.uni_hildesheim.sse.kernel_miner.util.ZipArchive;
+import de.uni_hildesheim.sse.kernel_miner.util.ZipArchiveWriter;
 import de.uni_hildesheim.sse.kernel_miner.util.logic.True;
 
 /**
@@ -23,9 +27,22 @@ import de.uni_hildesheim.sse.kernel_miner.util.logic.True;
  */
 public abstract class TypeChefExtractor {
     
-    private ConcurrentLinkedQueue<SourceFile> typeChefTodo;
+    /**
+     * Marks the end of {@link #typeChefTodo} and {@link #parserTodo}. One is added for each worker
+     * of the next stage, after the previous stage is finished.
+     */
+    private static final SourceFile END_OF_FILES = new SourceFile(new File(""));
+    
+    /**
+     * The files to run TypeChef on. The files with the highest estimated costs are taken first.
+     */
+    private BlockingQueue<SourceFile> typeChefTodo;
     
-    private ConcurrentLinkedQueue<SourceFile> parserTodo;
+    /**
+     * The files that TypeChef finished on. This queue is bounded, so that TypeChef workers wait if the
+     * parsers fall behind, instead of keeping the output of arbitrarily many files in memory.
+     */
+    private BlockingQueue<SourceFile> parserTodo;
     
     private int parserWorkerCount = 0;
     private int typeChefWorkerCount = 0;
@@ -33,8 +50,34 @@ public abstract class TypeChefExtractor {
     private Object numFinishedTypeChefThreadsLock = new Object();
     private int numFinishedTypeChefThreads = 0;
     
+    private AtomicInteger numFinishedParserThreads = new AtomicInteger();
+    
     private TypeChef typeChef;
     
+    private AdaptiveLimiter typeChefLimiter;
+    
+    private CostModel costModel;
+    
+    /**
+     * The journal of processed files. <code>null</code> if no manifest is used.
+     */
+    private RunManifest manifest;
+    
+    /**
+     * The fingerprints of the files that are processed in this run, for the {@link #manifest}.
+     */
+    private Map<SourceFile, String> fingerprints;
+    
+    /**
+     * How long TypeChef ran for the files that wait for or are in the parser stage.
+     */
+    private Map<SourceFile, Long> typeChefDurations;
+    
+    /**
+     * Writes the output of both the TypeChef and the parser workers into the output archive.
+     */
+    private ZipArchiveWriter outputWriter;
+    
     public TypeChefExtractor() {
     }
     
@@ -42,14 +85,46 @@ public abstract class TypeChefExtractor {
      * Starts running TypeChef on the files and parsing their output.
      * This spawns several threads that do the work. This method returns
      * directly after spawning the threads, it does not wait for them to finish their work.
+     * The source files are read by a separate thread, and the TypeChef workers start
+     * on them while the rest of the file is still being parsed.
      * <br /><br />
      * The {@link Logger} class should be initialized before calling this.
      */
     public void start()  {
-        typeChefTodo = new ConcurrentLinkedQueue<>();
-        parserTodo = new ConcurrentLinkedQueue<>();
         typeChef = createTypeChef();
-        readFileNames(getPcFile());
+        try {
+            costModel = new CostModel(typeChef.getSourceDir(), getCostHistoryFile());
+        } catch (IOException e) {
+            Logger.INSTANCE.logException("Can't open cost history", e);
+            costModel = new CostModel(typeChef.getSourceDir());
+        }
+        fingerprints = new ConcurrentHashMap<>();
+        typeChefDurations = new ConcurrentHashMap<>();
+        if (getManifestFile() != null) {
+            try {
+                manifest = new RunManifest(getManifestFile());
+                // the manifest records which files are done, so there is no need to look into the archive
+                typeChef.setCheckExistingOutput(!manifest.existed());
+            } catch (IOException e) {
+                Logger.INSTANCE.logException("Can't open run manifest", e);
+            }
+        }
+        outputWriter = new ZipArchiveWriter(typeChef.getOutput(), getOutputCheckpointInterval());
+        typeChef.setOutputWriter(outputWriter);
+        typeChefTodo = new PriorityBlockingQueue<>(1024, costModel.getComparator());
+        parserTodo = new ArrayBlockingQueue<>(Math.max(1, getParserQueueSize()));
+        typeChefLimiter = new AdaptiveLimiter(getNumTypeChefThreads(), isAdaptiveTypeChefThreads());
+        
+        Thread reader = new Thread(new Runnable() {
+            
+            @Override
+            public void run() {
+                readFileNames(getPcFile());
+            }
+            
+        }, "PcFileReaderThread");
+        reader.setUncaughtExceptionHandler(ExceptionHandler.INSTANCE);
+        reader.start();
         
         int numChefThreads = getNumTypeChefThreads();
         Logger.INSTANCE.logInfo("Starting " + numChefThreads + " TypeChefWorkerThreads");
@@ -81,11 +156,25 @@ public abstract class TypeChefExtractor {
      */
     protected abstract int getNumTypeChefThreads();
     
+    /**
+     * @return Whether the number of parallel TypeChef runs should adapt to the current load. If <code>true</code>,
+     *      then {@link #getNumTypeChefThreads()} is the maximum; fewer runs are started if the heap of this JVM
+     *      gets scarce or while unusually long runs are in progress. This should only be <code>true</code> if
+     *      TypeChef runs in this JVM. The number of parser threads is not adapted.
+     */
+    protected abstract boolean isAdaptiveTypeChefThreads();
+    
     /**
      * @return How many threads should run parsers for the TypeChef output in parallel.
      */
     protected abstract int getNumParserThreads();
     
+    /**
+     * @return How many files TypeChef finished on can wait for a parser thread. If the queue is full, then the
+     *      TypeChef threads wait.
+     */
+    protected abstract int getParserQueueSize();
+    
     /**
      * If the returned set is non-empty, then only these files are analyzed.
      * 
@@ -93,6 +182,26 @@ public abstract class TypeChefExtractor {
      */
     protected abstract Set<File> getAllowedFiles();
     
+    /**
+     * @return The file where the durations of TypeChef runs are recorded, to estimate the costs of files in later
+     *      runs. <code>null</code> if durations should not be recorded; the costs are then only estimated from
+     *      the sizes of the files.
+     */
+    protected abstract File getCostHistoryFile();
+    
+    /**
+     * @return The minimum time between two synchronizations of the output archive, in milliseconds. A crash
+     *      loses the output written since the last synchronization.
+     */
+    protected abstract long getOutputCheckpointInterval();
+    
+    /**
+     * @return The journal file where the status of each processed file is recorded. If it exists, then files that
+     *      were completed in an earlier run and have not changed since are skipped. <code>null</code> if no
+     *      journal should be used.
+     */
+    protected abstract File getManifestFile();
+    
     /**
      * @return The file that contains the list of all source files to parse with their presence condition.
      * This will be read by {@link KbuildMiner#readOutput(File)}. This file is usually
@@ -102,43 +211,93 @@ public abstract class TypeChefExtractor {
 
     private void readFileNames(File pcFile) {
         Logger.INSTANCE.logInfo("Reading file names from " + pcFile.getAbsolutePath());
-        List<SourceFile> read = null;
+        
+        final Set<File> allowedFilenames = getAllowedFiles();
+        final AtomicInteger numRead = new AtomicInteger();
+        final AtomicInteger numCompleted = new AtomicInteger();
         try {
-            read = KbuildMiner.readOutput(pcFile); 
+            KbuildMiner.readOutput(pcFile, new KbuildMiner.SourceFileHandler() {
+                
+                @Override
+                public void handle(SourceFile sourceFile) {
+                    // filter assembler files
+                    if (!sourceFile.getPath().toString().endsWith(".s")
+                            && !sourceFile.getPath().toString().endsWith(".S")) {
+                        if (allowedFilenames.isEmpty() || allowedFilenames.contains(sourceFile.getPath())) {
+                            if (manifest != null) {
+                                String fingerprint = RunManifest.getFingerprint(typeChef.getSourceDir(), sourceFile);
+                                if (manifest.isCompleted(sourceFile, fingerprint)) {
+                                    numCompleted.incrementAndGet();
+                                    return;
+                                }
+                                fingerprints.put(sourceFile, fingerprint);
+                            }
+                            
+                            costModel.estimate(sourceFile);
+                            typeChefTodo.add(sourceFile);
+                            numRead.incrementAndGet();
+                        }
+                    }
+                }
+                
+            });
+            
+            Logger.INSTANCE.logInfo("Read " + numRead.get() + " file locations",
+                    numCompleted.get() + " files skipped, because they were completed in an earlier run");
+            
         } catch (IOException e) {
             Logger.INSTANCE.logException("Can't read pc file", e);
             System.exit(-1);
-        }
-        
-        Set<File> allowedFilenames = getAllowedFiles();
-        for (SourceFile sourceFile : read) {
-            // filter assembler files
-            if (!sourceFile.getPath().toString().endsWith(".s") && !sourceFile.getPath().toString().endsWith(".S")) {
-                if (allowedFilenames.isEmpty() || allowedFilenames.contains(sourceFile.getPath())) {
-                    typeChefTodo.add(sourceFile);
-                }
+            
+        } catch (RuntimeException e) {
+            Logger.INSTANCE.logException("Can't read pc file; only the " + numRead.get()
+                    + " file locations read so far are processed", e);
+            
+        } finally {
+            // the workers wait for these, so they have to be added even if reading failed
+            for (int i = 0; i < getNumTypeChefThreads(); i++) {
+                typeChefTodo.add(END_OF_FILES);
             }
         }
-        
-        Logger.INSTANCE.logInfo("Read " + typeChefTodo.size() + " file locations");
     }
     
     private class TypeChefWorker implements Runnable {
         
         private boolean runTypeChef(SourceFile file) {
-            Logger.INSTANCE.logInfo("Running TypeChef on file " + file.getPath());
+            long start = typeChefLimiter.acquire();
+            if (Logger.INSTANCE.isEnabled(Logger.Level.INFO)) {
+                Logger.INSTANCE.logInfo("Running TypeChef on file " + file.getPath());
+            }
+            boolean result = false;
+            boolean failed = true;
             try {
-                boolean result = typeChef.runOnFile(file);
-                
-                Logger.INSTANCE.logInfo("Finished TypeChef on file " + file.getPath(),
-                        typeChefTodo.size() + " files left");
+                result = typeChef.runOnFile(file);
+                failed = false;
+                // only real runs are recorded; skipped files and cached results would distort the history
+                if (file.getTypeChefDuration() >= 0) {
+                    costModel.record(file, file.getTypeChefDuration());
+                }
                 
-                return result;
+                if (Logger.INSTANCE.isEnabled(Logger.Level.INFO)) {
+                    Logger.INSTANCE.logInfo("Finished TypeChef on file " + file.getPath(),
+                            typeChefTodo.size() + " files left");
+                }
                 
             } catch (IllegalArgumentException | IOException e) {
                 Logger.INSTANCE.logException("Caught exception while running TypeChef for file " + file.getPath(), e);
+            } finally {
+                long duration = System.currentTimeMillis() - start;
+                typeChefLimiter.release(start);
+                
+                if (failed) {
+                    recordResult(file, RunManifest.Status.FAILED, duration);
+                } else if (!result) {
+                    recordResult(file, RunManifest.Status.SKIPPED, duration);
+                } else {
+                    typeChefDurations.put(file, duration);
+                }
             }
-            return false;
+            return result;
         }
         
         @Override
@@ -151,13 +310,15 @@ public abstract class TypeChefExtractor {
                 
                 SourceFile file = null;
                 while (true) {
+                    file = take(typeChefTodo);
+                    
                     try {
-                        file = typeChefTodo.poll();
-                        if (file == null) {
+                        if (file == END_OF_FILES) {
                             break;
                         }
                         if (runTypeChef(file)) {
-                            parserTodo.add(file);
+                            // blocks if the parsers fall behind
+                            put(parserTodo, file);
                         }
                         
                     } catch (Exception e) {
@@ -168,8 +329,18 @@ public abstract class TypeChefExtractor {
     
                 Logger.INSTANCE.logInfo("Nothing left to do");
             } finally {
+                boolean last;
                 synchronized (numFinishedTypeChefThreadsLock) {
                     numFinishedTypeChefThreads++;
+                    last = numFinishedTypeChefThreads >= getNumTypeChefThreads();
+                }
+                if (last) {
+                    typeChef.stopProcesses();
+                    costModel.close();
+                    
+                    for (int i = 0; i < getNumParserThreads(); i++) {
+                        put(parserTodo, END_OF_FILES);
+                    }
                 }
             }
         }
@@ -180,25 +351,44 @@ public abstract class TypeChefExtractor {
         
         
         private void parseFile(SourceFile file) {
-            Logger.INSTANCE.logInfo("Parsing file " + file.getPath());
+            if (Logger.INSTANCE.isEnabled(Logger.Level.INFO)) {
+                Logger.INSTANCE.logInfo("Parsing file " + file.getPath());
+            }
+            Long typeChefDuration = typeChefDurations.remove(file);
+            long duration = typeChefDuration != null ? typeChefDuration : 0;
+            
+            RunManifest.Status status = RunManifest.Status.FAILED;
             try {
                 typeChef.parseTokens(file);
                 
                 if (!file.getBlocks().isEmpty()) {
-                    writeCsv(file, typeChef.getOutput());
-                    Logger.INSTANCE.logInfo("Finished parsing file " + file.getPath(),
-                            parserTodo.size() + " files in parsing queue");
+                    writeCsv(file, duration);
+                    // recorded once the .csv file is committed to the archive
+                    status = null;
+                    if (Logger.INSTANCE.isEnabled(Logger.Level.INFO)) {
+                        Logger.INSTANCE.logInfo("Finished parsing file " + file.getPath(),
+                                parserTodo.size() + " files in parsing queue");
+                    }
                     
                 } else {
+                    status = RunManifest.Status.NO_BLOCKS;
                     Logger.INSTANCE.logWarning(file.getPath() + " does not contain any blocks");
                 }
                 
-            } catch (IOException e) {
-                Logger.INSTANCE.logException("Caught exception while parsing file " + file.getPath(), e);
+            } finally {
+                if (status != null) {
+                    recordResult(file, status, duration);
+                }
             }
         }
         
-        private void writeCsv(SourceFile file, ZipArchive output) throws IOException {
+        /**
+         * Queues the .csv file with the blocks of the given file in the {@link #outputWriter}.
+         * 
+         * @param file The parsed file.
+         * @param duration How long TypeChef ran for the file, for the {@link #manifest}.
+         */
+        private void writeCsv(final SourceFile file, final long duration) {
             StringBuffer content = new StringBuffer();
             
             for (Block block : file.getBlocks()) {
@@ -212,7 +402,14 @@ public abstract class TypeChefExtractor {
             }
             
             File filename = new File(file.getPath().getPath() + ".csv");
-            output.writeFile(filename, content.toString());
+            outputWriter.writeFile(filename, content.toString(), new Runnable() {
+                
+                @Override
+                public void run() {
+                    recordResult(file, RunManifest.Status.DONE, duration);
+                }
+                
+            });
         }
         
         @Override
@@ -224,35 +421,84 @@ public abstract class TypeChefExtractor {
             
             SourceFile file = null;
             
-            while (true) {
-                try {
-                    file = parserTodo.poll();
-                    if (file == null) {
-                        synchronized (numFinishedTypeChefThreadsLock) {
-                            if (numFinishedTypeChefThreads >= getNumTypeChefThreads()) {
-                                break;
-                            }
-                        }
-                        
-                        try {
-                            Thread.sleep(10);
-                        } catch (InterruptedException e) {
-                        }
-                        
-                        continue;
+            try {
+                while (true) {
+                    file = take(parserTodo);
+                    if (file == END_OF_FILES) {
+                        break;
                     }
                     
-                    parseFile(file);
-                } catch (Exception e) {
-                    Logger.INSTANCE.logException("Caught exception while parsing file " + file.getPath(), e);
+                    try {
+                        parseFile(file);
+                    } catch (Exception e) {
+                        Logger.INSTANCE.logException("Caught exception while parsing file " + file.getPath(), e);
+                    }
+                }
+                
+                Logger.INSTANCE.logInfo("Nothing left to do");
+                
+            } finally {
+                // also if this thread dies, so that the output archive is always completed
+                if (numFinishedParserThreads.incrementAndGet() >= getNumParserThreads()) {
+                    try {
+                        outputWriter.close();
+                    } catch (IOException e) {
+                        Logger.INSTANCE.logException("Writing the output archive failed", e);
+                    }
+                    if (manifest != null) {
+                        manifest.close();
+                    }
                 }
             }
-            
-            Logger.INSTANCE.logInfo("Nothing left to do");
         }
         
     }
     
+    /**
+     * Records the outcome of processing a file in the {@link #manifest}, if a manifest is used.
+     * 
+     * @param file The processed file.
+     * @param status The outcome.
+     * @param duration How long TypeChef ran for the file, in milliseconds.
+     */
+    private void recordResult(SourceFile file, RunManifest.Status status, long duration) {
+        String fingerprint = fingerprints.remove(file);
+        if (manifest != null && fingerprint != null) {
+            manifest.record(file, status, duration, fingerprint);
+        }
+    }
+    
+    /**
+     * Adds the file to the queue, waiting if the queue is full. Interrupts are ignored.
+     * 
+     * @param queue The queue to add the file to.
+     * @param file The file to add.
+     */
+    private static void put(BlockingQueue<SourceFile> queue, SourceFile file) {
+        while (true) {
+            try {
+                queue.put(file);
+                return;
+            } catch (InterruptedException e) {
+            }
+        }
+    }
+    
+    /**
+     * Removes the head of the queue, waiting if the queue is empty. Interrupts are ignored.
+     * 
+     * @param queue The queue to take the file from.
+     * @return The head of the queue.
+     */
+    private static SourceFile take(BlockingQueue<SourceFile> queue) {
+        while (true) {
+            try {
+                return queue.take();
+            } catch (InterruptedException e) {
+            }
+        }
+    }
+    
     private static class ExceptionHandler implements UncaughtExceptionHandler {
 
         public static final ExceptionHandler INSTANCE = new ExceptionHandler();
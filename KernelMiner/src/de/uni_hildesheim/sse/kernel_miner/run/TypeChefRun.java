@@ -5,7 +5,9 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.HashSet;
+import java.util.Locale;
 import java.util.Properties;
 import java.util.Set;
 
@@ -39,11 +41,13 @@ public class TypeChefRun extends TypeChefExtractor {
         }
         
         String logFile = config.getProperty("logFile", "stdout");
+        boolean logAsync = Boolean.parseBoolean(config.getProperty("logAsync", "true"));
         if (logFile.equals("stdout")) {
-            Logger.init();
+            Logger.init(System.out, Charset.forName("UTF-8"), logAsync);
         } else {
-            Logger.init(new FileOutputStream(new File(logFile)));
+            Logger.init(new FileOutputStream(new File(logFile)), Charset.forName("UTF-8"), logAsync);
         }
+        Logger.INSTANCE.setLevel(Logger.Level.valueOf(config.getProperty("logLevel", "info").toUpperCase(Locale.ROOT)));
     }
     
     @Override
@@ -69,6 +73,15 @@ public class TypeChefRun extends TypeChefExtractor {
             chef.setDimacsModel(new File(config.getProperty("typechef.dimacsModel")));
         }
         
+        chef.setCallInSameVm(Boolean.parseBoolean(config.getProperty("typechef.callInSameVm", "true")));
+        chef.setProcessMaxFiles(Integer.parseInt(config.getProperty("typechef.processMaxFiles", "100")));
+        chef.setProcessMaxHeap(config.getProperty("typechef.processMaxHeap", "20g"));
+        chef.setStreamBlocks(Boolean.parseBoolean(config.getProperty("typechef.streamBlocks", "true")));
+        chef.setCoalesceLayout(Boolean.parseBoolean(config.getProperty("typechef.coalesceLayout", "true")));
+        if (config.getProperty("typechef.resultCache") != null) {
+            chef.setResultCacheDir(new File(config.getProperty("typechef.resultCache")));
+        }
+        
         int staticIncludeIndex = 0;
         String staticIncludeFile;
         while ((staticIncludeFile = config.getProperty("typechef.staticInclude." + staticIncludeIndex)) != null) {
@@ -113,11 +126,46 @@ public class TypeChefRun extends TypeChefExtractor {
         return Integer.parseInt(config.getProperty("typechef.numTypeChefThreads", "1"));
     }
 
+    @Override
+    protected boolean isAdaptiveTypeChefThreads() {
+        // the limiter measures the heap of this JVM, which says nothing about separate TypeChef processes
+        return Boolean.parseBoolean(config.getProperty("typechef.adaptiveThreads", "true"))
+                && Boolean.parseBoolean(config.getProperty("typechef.callInSameVm", "true"));
+    }
+
     @Override
     protected int getNumParserThreads() {
         return Integer.parseInt(config.getProperty("typechef.numParserThreads", "1"));
     }
 
+    @Override
+    protected int getParserQueueSize() {
+        return Integer.parseInt(config.getProperty("typechef.parserQueueSize", "16"));
+    }
+
+    @Override
+    protected File getCostHistoryFile() {
+        String costHistory = config.getProperty("typechef.costHistory");
+        return costHistory != null ? new File(costHistory) : null;
+    }
+
+    @Override
+    protected long getOutputCheckpointInterval() {
+        return Long.parseLong(config.getProperty("typechef.outputCheckpointInterval", "300")) * 1000;
+    }
+
+    @Override
+    protected File getManifestFile() {
+        String manifest = config.getProperty("typechef.manifest");
+        if (manifest == null) {
+            String output = config.getProperty("typechef.output", "typechef_output.zip");
+            manifest = output.substring(0, output.length() - ".zip".length()) + ".manifest";
+        } else if (manifest.isEmpty()) {
+            return null;
+        }
+        return new File(manifest);
+    }
+
     @Override
     protected File getPcFile() {
         return new File(config.getProperty("typechef.pcFile"));
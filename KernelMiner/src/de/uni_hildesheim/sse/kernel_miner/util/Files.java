@@ -1,13 +1,19 @@
 package de.uni_hildesheim.sse.kernel_miner.util;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 
 /**
  * Helper functions to work with files.
@@ -16,6 +22,27 @@ import java.nio.charset.Charset;
  */
 public class Files {
     
+    /**
+     * The maximum number of bytes that {@link #copy(InputStream, File)} transfers in one call.
+     */
+    private static final long TRANSFER_SIZE = 8 * 1024 * 1024;
+    
+    /**
+     * The size hint for streams of unknown size.
+     */
+    private static final int DEFAULT_SIZE_HINT = 8192;
+    
+    /**
+     * Files of at least this size are memory-mapped by {@link #readFile(File, Charset)}; smaller files are read
+     * with a single bulk read, since mapping a file has a fixed overhead.
+     */
+    private static final int MAP_THRESHOLD = 1024 * 1024;
+    
+    /**
+     * The maximum size of an array; some JVMs reserve header words in arrays.
+     */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+    
     /**
      * No instances allowed
      */
@@ -44,14 +71,40 @@ public class Files {
      * @throws IOException If reading the stream throws an exception.
      */
     public static String readStream(InputStream in, Charset charset) throws IOException {
-        ByteArrayOutputStream content = new ByteArrayOutputStream(512);
+        return readStream(in, charset, DEFAULT_SIZE_HINT);
+    }
+    
+    /**
+     * Reads the complete contents the given stream returns. The stream is read
+     * until it's <code>read</code> method returns -1. The stream is read in bulk
+     * into a buffer of the expected size; if the expected size is correct, then
+     * no further copies of the content are created.
+     * 
+     * @param in The stream to read completely.
+     * @param charset The charset to interpret the read bytes as.
+     * @param sizeHint The expected number of bytes in the stream, e.g. the size of a file in an archive.
+     *      If this is wrong, then the buffer is grown as needed.
+     * @return The complete string read from the stream.
+     * 
+     * @throws IOException If reading the stream throws an exception.
+     */
+    public static String readStream(InputStream in, Charset charset, long sizeHint) throws IOException {
+        // one more byte than expected, so that the end of the stream is found without growing the buffer
+        byte[] buffer = new byte[(int) Math.max(1, Math.min(sizeHint + 1, MAX_ARRAY_SIZE))];
+        int size = 0;
         
         int read;
-        while ((read = in.read()) != -1) {
-            content.write(read);
+        while ((read = in.read(buffer, size, buffer.length - size)) != -1) {
+            size += read;
+            if (size == buffer.length) {
+                if (buffer.length == MAX_ARRAY_SIZE) {
+                    throw new IOException("Stream is too large to be read into a string");
+                }
+                buffer = Arrays.copyOf(buffer, (int) Math.min(2L * buffer.length, MAX_ARRAY_SIZE));
+            }
         }
         
-        return new String(content.toByteArray(), charset);
+        return new String(buffer, 0, size, charset);
     }
     
     /**
@@ -83,7 +136,16 @@ public class Files {
         FileInputStream in = null;
         try {
             in = new FileInputStream(file);
-            content = readStream(in, charset);
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            
+            if (size >= MAP_THRESHOLD && size <= MAX_ARRAY_SIZE) {
+                // decode directly from the page cache, without copying the bytes into the heap first
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                content = charset.decode(buffer).toString();
+            } else {
+                content = readStream(in, charset, size);
+            }
         } finally {
             try {
                 if (in != null) {
@@ -141,4 +203,56 @@ public class Files {
         out.close();
     }
     
+    /**
+     * Copies the complete contents of the given file into the given stream. The bytes are transferred by the
+     * {@link FileChannel} of the file, so only a buffer of fixed size is used regardless of the size of the file,
+     * and no charset conversion is done. The stream is not closed.
+     * 
+     * @param file The file to copy.
+     * @param out The stream to write the contents to.
+     * 
+     * @throws FileNotFoundException If the given file does not exist.
+     * @throws IOException If reading the file or writing to the stream fails.
+     */
+    public static void copy(File file, OutputStream out) throws FileNotFoundException, IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            WritableByteChannel target = Channels.newChannel(out);
+            
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long transferred = channel.transferTo(position, size - position, target);
+                if (transferred <= 0) {
+                    // the file was truncated while copying
+                    break;
+                }
+                position += transferred;
+            }
+        }
+    }
+    
+    /**
+     * Copies the complete contents of the given stream into the given file. The bytes are transferred into the
+     * {@link FileChannel} of the file, so only a buffer of fixed size is used regardless of the size of the
+     * content, and no charset conversion is done. The stream is read until its end, but not closed.
+     * 
+     * @param in The stream to copy.
+     * @param target The file to write into. If it exists, then it is overwritten.
+     * 
+     * @throws IOException If reading the stream or writing the file fails.
+     */
+    public static void copy(InputStream in, File target) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(target)) {
+            FileChannel channel = out.getChannel();
+            ReadableByteChannel source = Channels.newChannel(in);
+            
+            long position = 0;
+            long transferred;
+            while ((transferred = channel.transferFrom(source, position, TRANSFER_SIZE)) > 0) {
+                position += transferred;
+            }
+        }
+    }
+    
 }
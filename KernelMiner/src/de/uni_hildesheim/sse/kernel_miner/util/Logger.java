@@ -4,15 +4,60 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * A thread-safe singleton logger.
+ * <p>
+ * In asynchronous mode, the logging threads only format the log entry and add it to a lock-free queue. A
+ * background thread writes the queued entries in batches, and flushes the target once per batch.
+ * </p>
  * 
  * @author Adam Krafczyk
  */
 public class Logger {
     
+    /**
+     * The log levels, in increasing severity.
+     */
+    public static enum Level {
+        
+        INFO("info"),
+        
+        WARNING("warning"),
+        
+        ERROR("error");
+        
+        private String name;
+        
+        private Level(String name) {
+            this.name = name;
+        }
+        
+        /**
+         * @return The name of this level, as written in the log.
+         */
+        public String getName() {
+            return name;
+        }
+        
+    }
+    
+    /**
+     * How long the writer thread sleeps, if no entries are queued.
+     */
+    private static final long WRITER_SLEEP = TimeUnit.MILLISECONDS.toNanos(10);
+    
+    /**
+     * The maximum number of entries that the writer thread writes with a single flush.
+     */
+    private static final int MAX_BATCH_SIZE = 1024;
+    
     /**
      * The singleton instance. <code>null</code> until one of the init Methods is called.
      */
@@ -42,7 +87,24 @@ public class Logger {
      * @param charset The charset the logger writes in.
      */
     public static void init(OutputStream target, Charset charset) {
-        INSTANCE = new Logger(target, charset);
+        init(target, charset, false);
+    }
+    
+    /**
+     * Initializes the logger. If the logger was initialized before, then the previous instance is closed.
+     * 
+     * @param target The output target of the logger. The logger will only write to it if it obtains a lock on it.
+     * @param charset The charset the logger writes in.
+     * @param async Whether the entries are written by a background thread. If <code>true</code>, then
+     *      the entries are written with a small delay. Remaining entries are written when the JVM exits or
+     *      {@link #close()} is called.
+     */
+    public static void init(OutputStream target, Charset charset, boolean async) {
+        Logger previous = INSTANCE;
+        INSTANCE = new Logger(target, charset, async);
+        if (previous != null) {
+            previous.close();
+        }
     }
     
     private OutputStream target;
@@ -51,10 +113,103 @@ public class Logger {
     
     private long started;
     
-    private Logger(OutputStream target, Charset charset) {
+    private volatile Level level;
+    
+    /**
+     * The entries that are not yet written by the {@link #writer}. <code>null</code> if not in asynchronous mode.
+     */
+    private Queue<String> queue;
+    
+    private Thread writer;
+    
+    private Thread shutdownHook;
+    
+    private volatile boolean closed;
+    
+    private Logger(OutputStream target, Charset charset, boolean async) {
         this.target = target;
         this.charset = charset;
         this.started = System.currentTimeMillis();
+        this.level = Level.INFO;
+        
+        if (async) {
+            queue = new ConcurrentLinkedQueue<>();
+            
+            writer = new Thread(new Runnable() {
+                
+                @Override
+                public void run() {
+                    runWriter();
+                }
+                
+            }, "LoggerThread");
+            writer.setDaemon(true);
+            writer.start();
+            
+            shutdownHook = new Thread(new Runnable() {
+                
+                @Override
+                public void run() {
+                    close();
+                }
+                
+            });
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+    }
+    
+    /**
+     * Sets the minimum level of entries that are logged. Entries with a lower level are discarded right
+     * away, without formatting them. Default is {@link Level#INFO}.
+     * 
+     * @param level The minimum level to log.
+     */
+    public void setLevel(Level level) {
+        this.level = level;
+    }
+    
+    /**
+     * @return The minimum level of entries that are logged.
+     */
+    public Level getLevel() {
+        return level;
+    }
+    
+    /**
+     * Checks whether entries with the given level are logged. This can be used to avoid building
+     * expensive messages that would be discarded anyway.
+     * 
+     * @param level The level to check.
+     * @return Whether entries with the given level are logged.
+     */
+    public boolean isEnabled(Level level) {
+        return level.compareTo(this.level) >= 0;
+    }
+    
+    /**
+     * Writes all queued entries and stops the background thread, if this logger is in asynchronous mode.
+     * Entries logged after this are written directly.
+     */
+    public void close() {
+        if (queue == null || closed) {
+            return;
+        }
+        closed = true;
+        
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // entries that were added while the writer thread stopped
+        writeQueued();
+        
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // the JVM is already shutting down; this is called by the hook
+        }
     }
     
     /**
@@ -77,24 +232,83 @@ public class Logger {
     /**
      * Writes a single log entry consisting of the specified lines with the specified log level to the target.
      * Internally, a lock on {@link #target} is acquired to ensure that messages are not broken up
-     * in a multi-threaded environment.
+     * in a multi-threaded environment. In asynchronous mode, the entry is only queued.
      * 
      * @param level The log level to be written.
      * @param lines The lines that are written together as one log entry.
      */
-    private void log(String level, String... lines) {
-        String header = constructHeader(level);
-        String indent = header.replaceAll(".", " ");
+    private void log(Level level, String... lines) {
+        if (!isEnabled(level)) {
+            return;
+        }
         
-        StringBuffer str = new StringBuffer(header);
+        String header = constructHeader(level.getName());
+        char[] indent = null;
+        
+        StringBuilder str = new StringBuilder(header);
         for (int i = 0; i < lines.length; i++) {
             if (i != 0) {
+                if (indent == null) {
+                    indent = new char[header.length()];
+                    Arrays.fill(indent, ' ');
+                }
                 str.append(indent);
             }
             str.append(lines[i]).append('\n');
         }
-        byte[] bytes = str.toString().getBytes(charset);
         
+        if (queue != null) {
+            queue.add(str.toString());
+            if (closed) {
+                // the writer thread may already be stopped
+                writeQueued();
+            }
+        } else {
+            write(str.toString().getBytes(charset));
+        }
+    }
+    
+    /**
+     * The main loop of the {@link #writer} thread.
+     */
+    private void runWriter() {
+        while (true) {
+            // read this before the queue, so that all entries added before close() are written
+            boolean stop = closed;
+            if (!writeQueued()) {
+                if (stop) {
+                    break;
+                }
+                LockSupport.parkNanos(this, WRITER_SLEEP);
+            }
+        }
+    }
+    
+    /**
+     * Writes the queued entries in batches.
+     * 
+     * @return Whether any entries were written.
+     */
+    private boolean writeQueued() {
+        boolean written = false;
+        String entry;
+        while ((entry = queue.poll()) != null) {
+            StringBuilder batch = new StringBuilder(entry);
+            for (int i = 1; i < MAX_BATCH_SIZE && (entry = queue.poll()) != null; i++) {
+                batch.append(entry);
+            }
+            write(batch.toString().getBytes(charset));
+            written = true;
+        }
+        return written;
+    }
+    
+    /**
+     * Writes the given bytes to the target and flushes it.
+     * 
+     * @param bytes The bytes to write.
+     */
+    private void write(byte[] bytes) {
         synchronized (target) {
             try {
                 target.write(bytes);
@@ -111,7 +325,7 @@ public class Logger {
      * @param lines The content of the log entry.
      */
     public void logInfo(String... lines) {
-        log("info", lines);
+        log(Level.INFO, lines);
     }
     
     /**
@@ -120,7 +334,7 @@ public class Logger {
      * @param lines The content of the log entry.
      */
     public void logWarning(String... lines) {
-        log("warning", lines);
+        log(Level.WARNING, lines);
     }
     
     /**
@@ -129,7 +343,7 @@ public class Logger {
      * @param lines The content of the log entry.
      */
     public void logError(String... lines) {
-        log("error", lines);
+        log(Level.ERROR, lines);
     }
     
     /**
@@ -162,10 +376,13 @@ public class Logger {
      * @param exc The exception to log. A stack trace will be logged.
      */
     public void logException(String comment, Throwable exc) {
+        if (!isEnabled(Level.ERROR)) {
+            return;
+        }
         List<String> lines = new ArrayList<>(exc.getStackTrace().length + 2);
         lines.add(comment + ":");
         exceptionToString(exc, lines);
-        log("error", lines.toArray(new String[0]));
+        log(Level.ERROR, lines.toArray(new String[0]));
     }
 
 }
@@ -10,6 +10,7 @@ import java.nio.charset.Charset;
 import de.schlichtherle.truezip.file.TFile;
 import de.schlichtherle.truezip.file.TFileInputStream;
 import de.schlichtherle.truezip.file.TFileOutputStream;
+import de.schlichtherle.truezip.file.TVFS;
 
 /**
  * Wrapper for accessing files inside a zip archive.
@@ -57,8 +58,11 @@ public class ZipArchive {
      * @throws IOException If reading the file fails.
      */
     public String readFile(File file) throws FileNotFoundException, IOException {
+        // the uncompressed size is stored in the archive, so the content can be read into a buffer of the right size
+        long size = getSize(file);
+        
         InputStream in = getInputStream(file);
-        String content = Files.readStream(in);
+        String content = Files.readStream(in, Charset.forName("UTF-8"), size);
         in.close();
         
         return content;
@@ -130,6 +134,19 @@ public class ZipArchive {
         out.close();
     }
     
+    /**
+     * Writes all changes to the archive file. Until this is called, changes may only be held in memory or
+     * in temporary files, and are lost if the JVM crashes. This is called automatically when the JVM exits.
+     * <p>
+     * Since zip archives can't be updated in place, this may rewrite the complete archive file.
+     * </p>
+     * 
+     * @throws IOException If writing the archive file fails.
+     */
+    public void sync() throws IOException {
+        TVFS.umount((TFile) zipFile);
+    }
+    
     /**
      * Removes the given file from the archive.
      * 
@@ -149,6 +166,8 @@ public class ZipArchive {
     
     /**
      * Copies or overwrites the given file with the contents of <code>toCopy</code>.
+     * The content is streamed in bulk, without holding it in memory. The bytes are copied
+     * unchanged, without any charset conversion.
      * 
      * @param file The path of the file in the archive.
      * @param toCopy The "real" file outside the archive to read the content of.
@@ -157,13 +176,20 @@ public class ZipArchive {
      * @throws IOException If reading or writing the files fails.
      */
     public void copyFileToArchive(File file, File toCopy) throws FileNotFoundException, IOException {
-        String content = Files.readFile(toCopy);
-        writeFile(file, content);
+        if (!toCopy.isFile()) {
+            // check this before the file in the archive is created
+            throw new FileNotFoundException("File " + toCopy + " does not exist");
+        }
+        
+        try (OutputStream out = getOutputStream(file)) {
+            Files.copy(toCopy, out);
+        }
     }
     
     /**
      * Extracts the given file from the archive into the given target file.
-     * The file in the archive remains unchanged.
+     * The file in the archive remains unchanged. The content is streamed in bulk, without
+     * holding it in memory. The bytes are copied unchanged, without any charset conversion.
      * 
      * @param file The path of the file in the archive.
      * @param target The "real" target file outside the archive. This file will
@@ -173,8 +199,9 @@ public class ZipArchive {
      * @throws IOException If reading or writing the files fails.
      */
     public void extract(File file, File target) throws FileNotFoundException, IOException {
-        String content = readFile(file);
-        Files.writeFile(target, content);
+        try (InputStream in = getInputStream(file)) {
+            Files.copy(in, target);
+        }
     }
     
 }
@@ -0,0 +1,284 @@
+package de.uni_hildesheim.sse.kernel_miner.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes files into a {@link ZipArchive} in a single background thread (write-behind). The methods of this
+ * class only add the file to a queue, so that the calling threads don't wait for the archive. The queue is
+ * bounded: if the archive can't keep up, then the calling threads wait until there is room again, instead of
+ * letting the queue grow without limit. Files outside of the archive are queued by their path, so that the
+ * queue only holds small strings in memory.
+ * <p>
+ * The writer thread writes all queued files, and periodically creates a checkpoint: all changes are
+ * synchronized to the archive file (see {@link ZipArchive#sync()}), so that a crash only loses the files
+ * written since the last checkpoint. After a checkpoint, the callbacks of the files that it contains are run.
+ * </p>
+ * <p>
+ * The writer thread is a daemon thread, so it does not keep the JVM alive if {@link #close()} is never called.
+ * Files that are still queued at that point are lost.
+ * </p>
+ * 
+ * @author Adam Krafczyk
+ */
+public class ZipArchiveWriter {
+    
+    /**
+     * A file that is queued for writing.
+     */
+    private static class Entry {
+        
+        private File file;
+        
+        private String content;
+        
+        private File toMove;
+        
+        private Runnable onCommitted;
+        
+        public Entry(File file, String content, File toMove, Runnable onCommitted) {
+            this.file = file;
+            this.content = content;
+            this.toMove = toMove;
+            this.onCommitted = onCommitted;
+        }
+        
+    }
+    
+    private static final Entry END = new Entry(null, null, null, null);
+    
+    /**
+     * The maximum number of files in the queue.
+     */
+    private static final int QUEUE_CAPACITY = 256;
+    
+    private ZipArchive archive;
+    
+    private long checkpointInterval;
+    
+    private BlockingQueue<Entry> queue;
+    
+    private Thread thread;
+    
+    /**
+     * The first exception that occurred while writing; thrown by {@link #close()}.
+     */
+    private IOException exception;
+    
+    /**
+     * Creates a writer and starts its background thread.
+     * 
+     * @param archive The archive to write to. Other threads should not write to it while this writer is open.
+     * @param checkpointInterval The minimum time between two checkpoints, in milliseconds.
+     */
+    public ZipArchiveWriter(ZipArchive archive, long checkpointInterval) {
+        this.archive = archive;
+        this.checkpointInterval = checkpointInterval;
+        this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        
+        thread = new Thread(new Runnable() {
+            
+            @Override
+            public void run() {
+                writeEntries();
+            }
+            
+        }, "ZipArchiveWriterThread");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Queues a file to be written, or overwritten, in the archive. Waits if the queue is full.
+     * 
+     * @param file The path of the file in the archive.
+     * @param content The new content of the file.
+     */
+    public void writeFile(File file, String content) {
+        writeFile(file, content, null);
+    }
+    
+    /**
+     * Queues a file to be written, or overwritten, in the archive. Waits if the queue is full.
+     * 
+     * @param file The path of the file in the archive.
+     * @param content The new content of the file.
+     * @param onCommitted Run by the writer thread after the file is synchronized to the archive file.
+     *      Not run if writing the file fails. May be <code>null</code>.
+     */
+    public void writeFile(File file, String content, Runnable onCommitted) {
+        put(new Entry(file, content, null, onCommitted));
+    }
+    
+    /**
+     * Queues a file outside of the archive to be copied into the archive. The file is deleted after it is
+     * copied, so the caller must not modify or delete it. Waits if the queue is full.
+     * 
+     * @param file The path of the file in the archive.
+     * @param toMove The "real" file outside the archive to read the content of.
+     */
+    public void moveFileToArchive(File file, File toMove) {
+        put(new Entry(file, null, toMove, null));
+    }
+    
+    /**
+     * Adds the entry to the queue, waiting while the queue is full. Interrupts are ignored.
+     * 
+     * @param entry The entry to add.
+     * 
+     * @throws IllegalStateException If the writer thread is not running anymore, so the entry would never be
+     *      taken from the queue.
+     */
+    private void put(Entry entry) throws IllegalStateException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                if (!thread.isAlive()) {
+                    throw new IllegalStateException("The archive writer is not running");
+                }
+                try {
+                    if (queue.offer(entry, 1, TimeUnit.SECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    /**
+     * Writes all queued files, creates a final checkpoint and stops the writer thread. No files may be
+     * queued after this.
+     * 
+     * @throws IOException If writing any of the files or a checkpoint failed.
+     */
+    public void close() throws IOException {
+        if (thread.isAlive()) {
+            put(END);
+        }
+        
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        
+        if (exception != null) {
+            throw exception;
+        }
+    }
+    
+    /**
+     * The main loop of the writer thread.
+     */
+    private void writeEntries() {
+        List<Entry> batch = new ArrayList<>();
+        List<Entry> uncommitted = new ArrayList<>();
+        long lastCheckpoint = System.currentTimeMillis();
+        boolean closed = false;
+        
+        while (!closed) {
+            long wait = lastCheckpoint + checkpointInterval - System.currentTimeMillis();
+            Entry first = null;
+            try {
+                if (uncommitted.isEmpty()) {
+                    // nothing to checkpoint; wait for the next file
+                    first = queue.take();
+                } else {
+                    first = queue.poll(Math.max(1, wait), TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+            }
+            
+            if (first != null) {
+                batch.add(first);
+                queue.drainTo(batch);
+            }
+            
+            for (Entry entry : batch) {
+                if (entry == END) {
+                    closed = true;
+                } else if (write(entry)) {
+                    uncommitted.add(entry);
+                }
+            }
+            batch.clear();
+            
+            if (!uncommitted.isEmpty() && (closed
+                    || System.currentTimeMillis() - lastCheckpoint >= checkpointInterval)) {
+                checkpoint(uncommitted);
+                uncommitted.clear();
+                lastCheckpoint = System.currentTimeMillis();
+            }
+        }
+    }
+    
+    /**
+     * Writes a single queued file into the archive.
+     * 
+     * @param entry The file to write.
+     * @return Whether writing succeeded.
+     */
+    private boolean write(Entry entry) {
+        try {
+            if (entry.toMove != null) {
+                archive.copyFileToArchive(entry.file, entry.toMove);
+                entry.toMove.delete();
+            } else {
+                archive.writeFile(entry.file, entry.content);
+            }
+            return true;
+            
+        } catch (IOException e) {
+            Logger.INSTANCE.logException("Can't write " + entry.file + " to archive", e);
+            if (exception == null) {
+                exception = e;
+            }
+            return false;
+        }
+    }
+    
+    /**
+     * Synchronizes the archive file and runs the callbacks of the given files.
+     * 
+     * @param entries The files written since the last checkpoint.
+     */
+    private void checkpoint(List<Entry> entries) {
+        try {
+            archive.sync();
+        } catch (IOException e) {
+            Logger.INSTANCE.logException("Can't synchronize archive", e);
+            if (exception == null) {
+                exception = e;
+            }
+            return;
+        }
+        
+        for (Entry entry : entries) {
+            if (entry.onCommitted != null) {
+                try {
+                    entry.onCommitted.run();
+                } catch (RuntimeException e) {
+                    Logger.INSTANCE.logException("Exception in callback for " + entry.file, e);
+                }
+            }
+        }
+    }
+    
+}
@@ -14,6 +14,8 @@ public final class Conjunction extends Formula {
     
     private Formula right;
     
+    private int hash;
+    
     /**
      * Creates a boolean conjunction (AND).
      * 
@@ -23,6 +25,7 @@ public final class Conjunction extends Formula {
     public Conjunction(Formula left, Formula right) {
         this.left = left;
         this.right = right;
+        this.hash = (left.hashCode() * 31 + right.hashCode()) * 31 + 1;
     }
     
     /**
@@ -51,11 +54,19 @@ public final class Conjunction extends Formula {
     
     @Override
     public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
         if (obj instanceof Conjunction) {
             Conjunction other = (Conjunction) obj;
-            return left.equals(other.getLeft()) && right.equals(other.getRight());
+            return hash == other.hash && left.equals(other.getLeft()) && right.equals(other.getRight());
         }
         return false;
     }
+    
+    @Override
+    public int hashCode() {
+        return hash;
+    }
 
 }
@@ -13,6 +13,8 @@ public final class Disjunction extends Formula {
     
     private Formula right;
     
+    private int hash;
+    
     /**
     * Creates a boolean disjunction (OR).
     * 
@@ -22,6 +24,7 @@ public final class Disjunction extends Formula {
     public Disjunction(Formula left, Formula right) {
         this.left = left;
         this.right = right;
+        this.hash = (left.hashCode() * 31 + right.hashCode()) * 31 + 2;
     }
     
     /**
@@ -50,11 +53,19 @@ public final class Disjunction extends Formula {
     
     @Override
     public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
         if (obj instanceof Disjunction) {
             Disjunction other = (Disjunction) obj;
-            return left.equals(other.getLeft()) && right.equals(other.getRight());
+            return hash == other.hash && left.equals(other.getLeft()) && right.equals(other.getRight());
         }
         return false;
     }
+    
+    @Override
+    public int hashCode() {
+        return hash;
+    }
 
 }
@@ -23,5 +23,10 @@ public final class False extends Formula {
     public boolean equals(Object obj) {
         return obj instanceof False;
     }
+    
+    @Override
+    public int hashCode() {
+        return 1237;
+    }
 
 }
@@ -32,4 +32,11 @@ public abstract class Formula implements Serializable {
     @Override
     public abstract boolean equals(Object obj);
     
+    /**
+     * Returns a hash code based on the structure of this formula, consistent with {@link #equals(Object)}.
+     * The hash code is computed once, when the formula is created.
+     */
+    @Override
+    public abstract int hashCode();
+    
 }
@@ -0,0 +1,157 @@
+package de.uni_hildesheim.sse.kernel_miner.util.logic;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Creates hash-consed {@link Formula}s: all structurally equal formulas created by the same factory are the
+ * same instance. Thus, {@link Formula#equals(Object)} between them is a reference comparison, and they
+ * can be used as keys in maps without deep comparisons.
+ * <p>
+ * The factory keeps all formulas it created, until {@link #clear()} is called. This class is not
+ * thread-safe.
+ * </p>
+ * 
+ * @author Adam Krafczyk
+ */
+public class FormulaFactory {
+    
+    private Map<Formula, Formula> formulas;
+    
+    private Map<String, Variable> variables;
+    
+    private True trueConstant;
+    
+    private False falseConstant;
+    
+    /**
+     * Creates an empty factory.
+     */
+    public FormulaFactory() {
+        formulas = new HashMap<>();
+        variables = new HashMap<>();
+        trueConstant = new True();
+        falseConstant = new False();
+    }
+    
+    /**
+     * @param name The name of the variable.
+     * @return The variable with the given name.
+     */
+    public Variable variable(String name) {
+        Variable var = variables.get(name);
+        if (var == null) {
+            var = new Variable(name);
+            variables.put(name, var);
+        }
+        return var;
+    }
+    
+    /**
+     * @param formula The operand of the negation. Should be created by this factory.
+     * @return The negation of the given formula.
+     */
+    public Formula not(Formula formula) {
+        return unique(new Negation(formula));
+    }
+    
+    /**
+     * @param left The left operand. Should be created by this factory.
+     * @param right The right operand. Should be created by this factory.
+     * @return The conjunction of the two operands.
+     */
+    public Formula and(Formula left, Formula right) {
+        return unique(new Conjunction(left, right));
+    }
+    
+    /**
+     * @param left The left operand. Should be created by this factory.
+     * @param right The right operand. Should be created by this factory.
+     * @return The disjunction of the two operands.
+     */
+    public Formula or(Formula left, Formula right) {
+        return unique(new Disjunction(left, right));
+    }
+    
+    /**
+     * @return The constant "true".
+     */
+    public True getTrue() {
+        return trueConstant;
+    }
+    
+    /**
+     * @return The constant "false".
+     */
+    public False getFalse() {
+        return falseConstant;
+    }
+    
+    /**
+     * Returns the instance of this factory that is structurally equal to the given formula. The formula
+     * can be created anywhere; it is not modified.
+     * 
+     * @param formula The formula to get the shared instance for.
+     * @return The shared instance that is equal to the given formula.
+     */
+    public Formula intern(Formula formula) {
+        Formula result;
+        if (formula instanceof Variable) {
+            result = variable(((Variable) formula).getName());
+            
+        } else if (formula instanceof Negation) {
+            result = not(intern(((Negation) formula).getFormula()));
+            
+        } else if (formula instanceof Conjunction) {
+            Conjunction and = (Conjunction) formula;
+            result = and(intern(and.getLeft()), intern(and.getRight()));
+            
+        } else if (formula instanceof Disjunction) {
+            Disjunction or = (Disjunction) formula;
+            result = or(intern(or.getLeft()), intern(or.getRight()));
+            
+        } else if (formula instanceof True) {
+            result = trueConstant;
+            
+        } else if (formula instanceof False) {
+            result = falseConstant;
+            
+        } else {
+            throw new IllegalArgumentException("Unknown formula type: " + formula.getClass().getName());
+        }
+        return result;
+    }
+    
+    /**
+     * @return The number of distinct formulas (without variables and constants) created by this factory.
+     */
+    public int getSize() {
+        return formulas.size();
+    }
+    
+    /**
+     * Forgets all formulas created so far. Formulas created afterwards are not the same instances as the
+     * ones created before.
+     */
+    public void clear() {
+        formulas.clear();
+        variables.clear();
+    }
+    
+    /**
+     * Returns the existing instance equal to the given formula, or stores the given formula if there is none.
+     * Since the operands are already unique, the comparison in the map does not recurse.
+     * 
+     * @param formula A newly created formula.
+     * @return The unique instance.
+     */
+    private Formula unique(Formula formula) {
+        Formula existing = formulas.get(formula);
+        if (existing == null) {
+            formulas.put(formula, formula);
+            existing = formula;
+        }
+        return existing;
+    }
+    
+}
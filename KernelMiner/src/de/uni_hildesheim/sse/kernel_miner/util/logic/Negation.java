@@ -11,6 +11,8 @@ public final class Negation extends Formula {
     
     private Formula formula;
     
+    private int hash;
+    
     /**
      * Creates a boolean negation (NOT).
      * 
@@ -18,6 +20,7 @@ public final class Negation extends Formula {
      */
     public Negation(Formula formula) {
         this.formula = formula;
+        this.hash = formula.hashCode() * 31 + 3;
     }
     
     /**
@@ -39,11 +42,19 @@ public final class Negation extends Formula {
     
     @Override
     public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
         if (obj instanceof Negation) {
             Negation other = (Negation) obj;
-            return formula.equals(other.formula);
+            return hash == other.hash && formula.equals(other.formula);
         }
         return false;
     }
+    
+    @Override
+    public int hashCode() {
+        return hash;
+    }
 
 }
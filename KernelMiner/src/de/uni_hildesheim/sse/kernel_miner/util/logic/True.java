@@ -24,4 +24,9 @@ public final class True extends Formula {
         return obj instanceof True;
     }
     
+    @Override
+    public int hashCode() {
+        return 1231;
+    }
+
 }
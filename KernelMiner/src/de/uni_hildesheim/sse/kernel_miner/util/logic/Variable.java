@@ -48,11 +48,20 @@ public final class Variable extends Formula {
     
     @Override
     public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
         if (obj instanceof Variable) {
             Variable other = (Variable) obj;
             return name.equals(other.name);
         }
         return false;
     }
+    
+    @Override
+    public int hashCode() {
+        // String caches its hash code
+        return name.hashCode();
+    }
 
 }
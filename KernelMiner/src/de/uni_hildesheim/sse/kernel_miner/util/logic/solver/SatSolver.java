@@ -1,15 +1,17 @@
 package de.uni_hildesheim.sse.kernel_miner.util.logic.solver;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.sat4j.core.VecInt;
 import org.sat4j.maxsat.SolverFactory;
-import org.sat4j.reader.DimacsReader;
-import org.sat4j.reader.ParseFormatException;
-import org.sat4j.reader.Reader;
 import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.IConstr;
 import org.sat4j.specs.ISolver;
 import org.sat4j.specs.TimeoutException;
 
@@ -22,15 +24,55 @@ import de.uni_hildesheim.sse.kernel_miner.util.logic.solver.cnf.RecursiveReplaci
 
 /**
  * A solver for checking whether {@link Formula} and DIMACS models are satisfiable.
+ * <p>
+ * The clauses of the DIMACS model are read only once, when the solver is created, and are kept
+ * in memory. Each check works on its own solver instance and variable mapping, so a single
+ * {@link SatSolver} can be shared between threads.
+ * </p>
+ * <p>
+ * For many subsequent checks against the same DIMACS model, {@link #isSatisfiableIncremental(Formula, Boolean)}
+ * should be used; it keeps one solver instance with the model loaded between the checks.
+ * </p>
  * 
  * @author Adam Krafczyk
  */
 public class SatSolver {
 
-    private File dimacsModel;
+    /**
+     * The clauses of the DIMACS model; <code>null</code> if no DIMACS model is used. This list
+     * is never modified after creation.
+     */
+    private List<int[]> modelClauses;
     
+    /**
+     * The number of variables declared in the DIMACS model.
+     */
+    private int modelVariables;
+    
+    /**
+     * The mapping of the DIMACS model. This is never modified after creation; each check extends
+     * it with its own {@link VariableToNumberConverter}.
+     */
     private VariableToNumberConverter varConverter;
     
+    /**
+     * After this many calls to {@link #isSatisfiableIncremental(Formula, Boolean)}, the
+     * {@link #incrementalSolver} is re-created. A number for the selector variable of each of
+     * these checks is reserved when the solver is created.
+     */
+    private static final int MAX_INCREMENTAL_CHECKS = 10000;
+    
+    /**
+     * The solver used by {@link #isSatisfiableIncremental(Formula, Boolean)}; contains the DIMACS model.
+     * Lazily created.
+     */
+    private ISolver incrementalSolver;
+    
+    /**
+     * The number of checks done on the current {@link #incrementalSolver}.
+     */
+    private int incrementalChecks;
+    
     /**
      * Creates an empty sat solver. This is useful for solving {@link Formula}s
      * without a DIMACS model.
@@ -47,14 +89,87 @@ public class SatSolver {
      * @throws SolverException If reading the DIMACS file fails.
      */
     public SatSolver(File dimacsModel, String prefix) throws SolverException {
-        this.dimacsModel = dimacsModel;
         try {
             varConverter = new VariableToNumberConverter(dimacsModel, prefix);
+            readDimacsClauses(dimacsModel);
         } catch (IOException e) {
             throw new SolverException("Can't read DIMACS file", e);
         }
     }
     
+    /**
+     * Reads the clauses of the given DIMACS file into {@link #modelClauses}.
+     * 
+     * @param dimacsModel The DIMACS file to read.
+     * 
+     * @throws IOException If reading the file fails.
+     * @throws SolverException If the file is not a valid DIMACS file.
+     */
+    private void readDimacsClauses(File dimacsModel) throws IOException, SolverException {
+        List<int[]> clauses = new ArrayList<>();
+        int[] current = new int[16];
+        int currentSize = 0;
+        
+        BufferedReader in = new BufferedReader(new FileReader(dimacsModel));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("c")) {
+                    continue;
+                }
+                if (line.startsWith("%")) {
+                    // some generators mark the end of the clauses like this
+                    break;
+                }
+                if (line.startsWith("p")) {
+                    String[] parts = line.trim().split("\\s+");
+                    if (parts.length < 4 || !parts[1].equals("cnf")) {
+                        throw new SolverException("Invalid problem line in DIMACS file: " + line);
+                    }
+                    modelVariables = Integer.parseInt(parts[2]);
+                    clauses = new ArrayList<>(Integer.parseInt(parts[3]));
+                    continue;
+                }
+                
+                // clauses are a list of literals terminated by 0, possibly spanning multiple lines
+                for (int i = 0; i < line.length();) {
+                    char c = line.charAt(i);
+                    if (c != '-' && (c < '0' || c > '9')) {
+                        i++;
+                        continue;
+                    }
+                    
+                    int end = i + 1;
+                    while (end < line.length() && line.charAt(end) >= '0' && line.charAt(end) <= '9') {
+                        end++;
+                    }
+                    int literal = Integer.parseInt(line.substring(i, end));
+                    i = end;
+                    
+                    if (literal == 0) {
+                        int[] clause = new int[currentSize];
+                        System.arraycopy(current, 0, clause, 0, currentSize);
+                        clauses.add(clause);
+                        currentSize = 0;
+                    } else {
+                        if (currentSize == current.length) {
+                            int[] bigger = new int[current.length * 2];
+                            System.arraycopy(current, 0, bigger, 0, currentSize);
+                            current = bigger;
+                        }
+                        current[currentSize++] = literal;
+                    }
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new SolverException("Invalid number in DIMACS file", e);
+        } finally {
+            in.close();
+        }
+        
+        modelClauses = Collections.unmodifiableList(clauses);
+    }
+    
     /**
      * @return Whether the DIMACS model in this solver is satisfiable or not.
      * @throws SolverException If the DIMACS model can't be solved.
@@ -83,6 +198,130 @@ public class SatSolver {
     public boolean isSatisfiable(Formula formula, Boolean defaultValue) throws SolverException {
         ISolver solver = getSolver();
         
+        VariableToNumberConverter varConverter = new VariableToNumberConverter(this.varConverter, getFirstMaxNumber());
+        
+        for (int[] clause : convertToClauses(formula, defaultValue, varConverter)) {
+            try {
+                solver.addClause(new VecInt(clause));
+            } catch (ContradictionException e) {
+                return false;
+            }
+        }
+        
+        return isSatisfiable(solver);
+    }
+    
+    /**
+     * Checks whether the given {@link Formula} is satisfiable, like {@link #isSatisfiable(Formula, Boolean)}.
+     * In contrast to that method, the solver instance containing the DIMACS model is kept between
+     * calls: The clauses of the given {@link Formula} are added guarded by a new selector variable,
+     * the solver is run under the assumption that this selector is <code>true</code>, and the clauses
+     * are retracted afterwards. This avoids re-building the model for each check, which makes this
+     * method much faster if many {@link Formula}s are checked against the same model.
+     * <p>
+     * Calls to this method are synchronized on this object.
+     * </p>
+     * 
+     * @param formula The {@link Formula} that is checked for satisfiability.
+     * @param defaultValue How unknown variables in constraint are treated:<ul>
+     *      <li>If <code>null</code>: Throw an exception</li>
+     *      <li>If <code>true</code>: Leave them open and continue to solve</li>
+     *      <li>If <code>false</code>: Add them as <code>false</code> (only for this check) and continue to solve</li>
+     * </ul>
+     * 
+     * @return Whether the given {@link Formula} (+ the DIMACS model) is satisfiable.
+     * @throws SolverException If the given {@link Formula} can't be converted to CNF, or solving the model fails.
+     */
+    public synchronized boolean isSatisfiableIncremental(Formula formula, Boolean defaultValue)
+            throws SolverException {
+        
+        if (incrementalSolver == null || incrementalChecks >= MAX_INCREMENTAL_CHECKS) {
+            incrementalSolver = getSolver();
+            incrementalSolver.setTimeoutOnConflicts(Integer.MAX_VALUE);
+            incrementalChecks = 0;
+        }
+        
+        /*
+         * Numbers after the DIMACS model are reserved for the selectors; each selector is only used once.
+         * Variables introduced by the check (CNF helper variables, unknown variables) get numbers after
+         * these. They can be re-used by later checks, since all clauses that mention them are retracted.
+         */
+        int selector = getFirstMaxNumber() + (++incrementalChecks);
+        VariableToNumberConverter varConverter = new VariableToNumberConverter(this.varConverter,
+                getFirstMaxNumber() + MAX_INCREMENTAL_CHECKS);
+        List<int[]> clauses = convertToClauses(formula, defaultValue, varConverter);
+        
+        List<IConstr> added = new ArrayList<>(clauses.size());
+        try {
+            for (int[] clause : clauses) {
+                int[] guarded = new int[clause.length + 1];
+                guarded[0] = -selector;
+                System.arraycopy(clause, 0, guarded, 1, clause.length);
+                
+                IConstr constr = incrementalSolver.addClause(new VecInt(guarded));
+                if (constr != null) {
+                    added.add(constr);
+                }
+            }
+            
+            return incrementalSolver.isSatisfiable(new VecInt(new int[] {selector}));
+            
+        } catch (ContradictionException e) {
+            // can't happen, since the selector is never assigned outside of checks
+            incrementalSolver = null;
+            throw new SolverException("Contradiction in guarded clauses", e);
+            
+        } catch (TimeoutException e) {
+            incrementalSolver = null;
+            throw new SolverException(e);
+            
+        } finally {
+            if (incrementalSolver != null) {
+                retract(added, selector);
+            }
+        }
+    }
+    
+    /**
+     * Retracts the clauses of a check done in {@link #isSatisfiableIncremental(Formula, Boolean)}.
+     * The selector is permanently set to <code>false</code>, which also disables all learned clauses
+     * that were derived from the guarded clauses.
+     * 
+     * @param added The guarded clauses that were added to the {@link #incrementalSolver}.
+     * @param selector The selector variable that guards the clauses.
+     */
+    private void retract(List<IConstr> added, int selector) {
+        for (IConstr constr : added) {
+            incrementalSolver.removeConstr(constr);
+        }
+        
+        try {
+            incrementalSolver.addClause(new VecInt(new int[] {-selector}));
+        } catch (ContradictionException e) {
+            // can't happen, since setting the selector to false satisfies all guarded clauses
+            incrementalSolver = null;
+        }
+    }
+    
+    /**
+     * @return The highest number of a variable in the DIMACS model. New variables must get numbers higher than this.
+     */
+    private int getFirstMaxNumber() {
+        return Math.max(varConverter.getMaxNumber(), modelVariables);
+    }
+    
+    /**
+     * Converts the given {@link Formula} into DIMACS clauses.
+     * 
+     * @param formula The {@link Formula} to convert.
+     * @param defaultValue How unknown variables are treated; see {@link #isSatisfiable(Formula, Boolean)}.
+     * @param varConverter The mapping to use; new variables are added to this.
+     * @return The clauses in DIMACS number format. AND'd together, these are equisatisfiable to the given formula.
+     * 
+     * @throws SolverException If the given {@link Formula} can't be converted to CNF.
+     */
+    private List<int[]> convertToClauses(Formula formula, Boolean defaultValue,
+            VariableToNumberConverter varConverter) throws SolverException {
         
         ICnfConverter cnfConverter = new RecursiveReplacingCnfConverter(varConverter);
         
@@ -93,21 +332,15 @@ public class SatSolver {
             throw new SolverException("Can't convert constraint to CNF", e);
         }
         
-        
+        List<int[]> clauses = new ArrayList<>(cnfTerms.size());
         for (int i = 0; i < cnfTerms.size(); i++) {
-            int[] numbers = convertToNumbers(cnfTerms.get(i), defaultValue, cnfTerms);
-            try {
-                solver.addClause(new VecInt(numbers));
-            } catch (ContradictionException e) {
-                return false;
-            }
+            clauses.add(convertToNumbers(cnfTerms.get(i), defaultValue, cnfTerms, varConverter));
         }
-        
-        return isSatisfiable(solver);
+        return clauses;
     }
     
-    private int[] convertToNumbers(Formula cnfTerm, Boolean defaultValue, List<Formula> cnfTerms)
-            throws SolverException {
+    private int[] convertToNumbers(Formula cnfTerm, Boolean defaultValue, List<Formula> cnfTerms,
+            VariableToNumberConverter varConverter) throws SolverException {
         
         int[] numbers = null;
         
@@ -146,12 +379,16 @@ public class SatSolver {
         ISolver solver = SolverFactory.newDefault();
         solver.setDBSimplificationAllowed(false);
         
-        if (dimacsModel != null) {
-            Reader reader = new DimacsReader(solver);
+        if (modelClauses != null) {
+            solver.newVar(modelVariables);
+            solver.setExpectedNumberOfClauses(modelClauses.size());
             
             try {
-                reader.parseInstance(dimacsModel.getAbsolutePath());
-            } catch (ParseFormatException | IOException | ContradictionException e) {
+                for (int[] clause : modelClauses) {
+                    // the solver may modify the given vector, so don't pass the shared array
+                    solver.addClause(new VecInt(clause.clone()));
+                }
+            } catch (ContradictionException e) {
                 throw new SolverException("Can't create solver", e);
             }
         }
@@ -23,6 +23,8 @@ public class VariableToNumberConverter {
     
     private HashMap<String, Integer> mapping;
     
+    private VariableToNumberConverter parent;
+    
     private int maxNumber = 0;
     
     /**
@@ -48,6 +50,40 @@ public class VariableToNumberConverter {
         mapping = new HashMap<>();
     }
     
+    /**
+     * Creates a {@link VariableToNumberConverter} that extends the given one. Lookups fall back to
+     * the mapping of <code>parent</code>, while new variables are only added to this converter.
+     * This is cheap, since the mapping of <code>parent</code> is not copied. <code>parent</code>
+     * must not be modified while this converter is used.
+     * 
+     * @param parent The converter to extend.
+     */
+    public VariableToNumberConverter(VariableToNumberConverter parent) {
+        this(parent, parent.maxNumber);
+    }
+    
+    /**
+     * Creates a {@link VariableToNumberConverter} that extends the given one, like
+     * {@link #VariableToNumberConverter(VariableToNumberConverter)}. Numbers for new variables
+     * are assigned starting after <code>maxNumber</code>.
+     * 
+     * @param parent The converter to extend.
+     * @param maxNumber The highest number that is already in use. Must not be lower than the
+     *      highest number of <code>parent</code>.
+     */
+    public VariableToNumberConverter(VariableToNumberConverter parent, int maxNumber) {
+        this();
+        this.parent = parent;
+        this.maxNumber = maxNumber;
+    }
+    
+    /**
+     * @return The highest number that is assigned to a variable in this converter.
+     */
+    public int getMaxNumber() {
+        return maxNumber;
+    }
+    
     /**
      * Parses the given DIMACS file and fills the internal mapping.
      * This expects the mapping to be at the top of the DIMACS file in the format:
@@ -86,11 +122,14 @@ public class VariableToNumberConverter {
      * @throws VarNotFoundException If the variable was not found in the DIMACS model.
      */
     public int getNumber(String name) throws VarNotFoundException {
-        try {
-            return mapping.get(name);
-        } catch (NullPointerException e) {
+        Integer number = mapping.get(name);
+        if (number == null) {
+            if (parent != null) {
+                return parent.getNumber(name);
+            }
             throw new VarNotFoundException(name);
         }
+        return number;
     }
     
     /**
@@ -99,14 +138,13 @@ public class VariableToNumberConverter {
      */
     public String getName(int number) {
         for (String name : mapping.keySet()) {
-            try {
-                if (getNumber(name) == number) {
-                    return name;
-                }
-            } catch (VarNotFoundException e) {
-                // can't happen
+            if (mapping.get(name) == number) {
+                return name;
             }
         }
+        if (parent != null) {
+            return parent.getName(number);
+        }
         return null;
     }
     
@@ -120,9 +158,9 @@ public class VariableToNumberConverter {
      * @return The number for the new variable.
      */
     public int addVarible(String name) {
-        if (mapping.get(name) != null) {
-            return mapping.get(name);
-        } else {
+        try {
+            return getNumber(name);
+        } catch (VarNotFoundException e) {
             mapping.put(name, ++maxNumber);
             return maxNumber;
         }
@@ -1,11 +1,17 @@
 package de.uni_hildesheim.sse.kernel_miner.util.parser;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 
 /**
  * Parses strings based on {@link Grammar}s.
+ * <p>
+ * The parser works in linear time: the lexer stores the tokens in a flat, array-backed {@link TokenBuffer},
+ * and a single pass over this buffer builds the result with an operand and an operator stack
+ * (operator-precedence parsing). Operators with a lower precedence level are applied first; operators with
+ * the same precedence level are right-associative.
+ * </p>
  * 
  * @param <T> The type of formula that this parser will construct. A proper {@link Grammar} needs to be supplied.
  * 
@@ -13,6 +19,14 @@ import java.util.List;
  */
 public class Parser<T> {
     
+    private static final int IDENTIFIER = 0;
+    
+    private static final int OPERATOR = 1;
+    
+    private static final int OPENING_BRACKET = 2;
+    
+    private static final int CLOSING_BRACKET = 3;
+    
     private Grammar<T> grammar;
     
     /**
@@ -34,25 +48,25 @@ public class Parser<T> {
      * @throws ExpressionFormatException If the supplied string is not a valid expression for the given {@link Grammar}.
      */
     public T parse(String expression) throws ExpressionFormatException  {
-        Token[] tokens = lex(expression);
-        T f = parse(tokens, 0, tokens.length - 1);
+        char[] expr = expression.toCharArray();
+        TokenBuffer tokens = lex(expr);
+        T f = parse(expr, tokens);
         return f;
     }
-
+    
     /**
      * Lexes the given expression, based on the {@link Grammar} this parser was created for.
      * 
-     * @param expression The expression to lex.
-     * @return A flat array of {@link Token}s found in the expression.
+     * @param expr The expression to lex.
+     * @return A flat buffer of the tokens found in the expression.
      * 
      * @throws ExpressionFormatException If the expression contains characters not allowed by the {@link Grammar}.
      */
-    private Token[] lex(String expression) throws ExpressionFormatException {
-        List<Token> result = new LinkedList<>();
-        
-        Identifier currentIdentifier = null;
+    private TokenBuffer lex(char[] expr) throws ExpressionFormatException {
+        // each token consumes at least one character
+        TokenBuffer result = new TokenBuffer(expr.length);
         
-        char[] expr = expression.toCharArray();
+        boolean inIdentifier = false;
         
         // iterate over the string; i is incremented based on which token was identified
         for (int i = 0; i < expr.length;) {
@@ -60,30 +74,31 @@ public class Parser<T> {
             
             if (grammar.isWhitespaceChar(expr, i)) {
                 // whitespaces are ignored
-                currentIdentifier = null;
+                inIdentifier = false;
                 i++;
                 
             } else  if (grammar.isOpeningBracketChar(expr, i)) {
-                currentIdentifier = null;
-                result.add(new Bracket(false));
+                inIdentifier = false;
+                result.add(OPENING_BRACKET, i, null);
                 i += 1;
                 
             } else if (grammar.isClosingBracketChar(expr, i)) {
-                currentIdentifier = null;
-                result.add(new Bracket(true));
+                inIdentifier = false;
+                result.add(CLOSING_BRACKET, i, null);
                 i += 1;
                 
             } else if (op != null) {
-                currentIdentifier = null;
-                result.add(op);
+                inIdentifier = false;
+                result.add(OPERATOR, i, op);
                 i += op.getSymbol().length();
                 
             } else if (grammar.isIdentifierChar(expr, i)) {
-                if (currentIdentifier == null) {
-                    currentIdentifier = new Identifier("");
-                    result.add(currentIdentifier);
+                if (!inIdentifier) {
+                    inIdentifier = true;
+                    result.add(IDENTIFIER, i, null);
                 }
-                currentIdentifier.setName(currentIdentifier.getName() + expr[i]);
+                // extend the identifier to include this character
+                result.ends[result.size - 1] = i + 1;
                 i++;
                 
             } else {
@@ -92,126 +107,183 @@ public class Parser<T> {
             }
         }
         
-        return result.toArray(new Token[0]);
+        return result;
     }
     
     /**
-     * Parses the flat array of tokens that the lexer found, based on the {@link Grammar}
+     * Parses the flat buffer of tokens that the lexer found, based on the {@link Grammar}
      * this parser was created for.
      * <p>
-     * For performance purposes, there is only instance of the <code>tokens</code>
-     * array. Two indices, <code>min</code> and <code>max</code> are provided,
-     * to indicate which part should be parsed by this method.
+     * The tokens are read from left to right. Identifiers are pushed on the operand stack, operators and
+     * opening brackets on the operator stack. Before an operator is pushed, all operators on the stack with
+     * a lower precedence level are applied to the operands (these are part of its left side). Closing brackets
+     * and the end of the expression apply all operators up to the matching opening bracket.
      * </p>
      * 
-     * @param tokens The flat array of tokens; the output of {@link #lex(String)}.
-     * @param min The lower bound of the part of <code>tokens</code> that should be parsed, inclusive.
-     * @param max The upper bound of the part of <code>tokens</code> that should be parsed, inclusive.
+     * @param expr The expression that was lexed; identifiers are sliced from this.
+     * @param tokens The flat buffer of tokens; the output of {@link #lex(char[])}.
      * @return The parsed expression.
      * 
      * @throws ExpressionFormatException If the expression denoted by tokens is malformed.
      */
-    private T parse(Token[] tokens, int min, int max) throws ExpressionFormatException {
-        // this method calls itself recursively
-
-        // if we have  no tokens left then something went wrong
-        if (max - min < 0) {
-            throw new ExpressionFormatException("Expected identifier");
-        }
+    private T parse(char[] expr, TokenBuffer tokens) throws ExpressionFormatException {
+        List<T> operands = new ArrayList<>();
         
-        // if we only have one token left, then it must be an identifier
-        if (max - min == 0) {
-            if (!(tokens[min] instanceof Identifier)) {
-                throw new ExpressionFormatException("Expected identifier, got " + tokens[min]);
-            }
-            
-            return grammar.makeIdentifierFormula(((Identifier) tokens[min]).getName());
-        }
+        // indices of the operators and opening brackets in tokens, that are not yet applied or closed
+        int[] pending = new int[tokens.size];
+        int numPending = 0;
         
-        // find the "highest" operator in the bracket tree
+        // whether the next token has to start an operand (i.e. the previous token was not the end of one)
+        boolean expectOperand = true;
         
-        int highestOperatorLevel = -1;
-        int highestOpPos = -1;
-        Operator highestOp = null;
-        
-        int bracketDepth = 0;
-        
-        for (int i = min; i <= max; i++) {
-            Token e = tokens[i];
-            if (e instanceof Bracket) {
-                if (((Bracket) e).isClosing()) {
-                    bracketDepth--;
-                } else {
-                    bracketDepth++;
+        for (int i = 0; i < tokens.size; i++) {
+            switch (tokens.types[i]) {
+            case IDENTIFIER:
+                if (!expectOperand) {
+                    throw new ExpressionFormatException("Couldn't find operator");
                 }
+                String name = new String(expr, tokens.starts[i], tokens.ends[i] - tokens.starts[i]);
+                operands.add(grammar.makeIdentifierFormula(name));
+                expectOperand = false;
+                break;
                 
-                if (bracketDepth < 0) {
-                    throw new ExpressionFormatException("Unbalanced brackets");
+            case OPENING_BRACKET:
+                if (!expectOperand) {
+                    throw new ExpressionFormatException("Couldn't find operator");
                 }
+                pending[numPending++] = i;
+                break;
                 
-            } else if (e instanceof Operator) {
-                Operator op = (Operator) e;
+            case CLOSING_BRACKET:
+                if (expectOperand) {
+                    throw new ExpressionFormatException("Expected identifier");
+                }
+                numPending = applyOperators(tokens, pending, numPending, operands, null);
+                if (numPending == 0) {
+                    throw new ExpressionFormatException("Unbalanced brackets");
+                }
+                // remove the matching opening bracket
+                numPending--;
+                break;
                 
-                // if ...
-                if (
-                        highestOp == null // .. we haven't found any operator yet
-                        || bracketDepth < highestOperatorLevel // ... the current operator is "higher" in the bracket structure
-                        || (
-                                highestOperatorLevel == bracketDepth
-                                && op.getPrecedence() > highestOp.getPrecedence()
-                        ) // ... the current operator has the same level as the previously found one, but
-                          // it has a higher precedence
-                ) {
-                    highestOpPos = i;
-                    highestOp = op;
-                    highestOperatorLevel = bracketDepth;
+            default:
+                Operator op = tokens.operators[i];
+                if (op.isBinary()) {
+                    if (expectOperand) {
+                        throw new ExpressionFormatException("Expected identifier");
+                    }
+                    numPending = applyOperators(tokens, pending, numPending, operands, op);
+                    
+                } else {
+                    // a unary operator has to be at the start of the expression it is applied to; if the
+                    // previous operator has a lower precedence level, then the unary operator would be
+                    // applied to an expression that includes the previous operator
+                    if (!expectOperand || (i > 0 && tokens.types[i - 1] == OPERATOR
+                            && tokens.operators[i - 1].getPrecedence() < op.getPrecedence())) {
+                        throw new ExpressionFormatException("Unary operator is not on the left");
+                    }
                 }
+                pending[numPending++] = i;
+                expectOperand = true;
+                break;
             }
         }
         
-        if (bracketDepth != 0) {
+        if (expectOperand) {
+            throw new ExpressionFormatException("Expected identifier");
+        }
+        
+        numPending = applyOperators(tokens, pending, numPending, operands, null);
+        if (numPending != 0) {
             throw new ExpressionFormatException("Unbalanced brackets");
         }
         
-        T result = null;
-
-        // if there is an operator that is not nested in any brackets
-        if (highestOperatorLevel == 0) {
-            // recursively parse the nested parts based on whether the operator is binary or not
-            // and pass the results to the grammer to create the result
-            
-            if (highestOp.isBinary()) {
-                T leftTree = parse(tokens, min, highestOpPos - 1);
-                T rightTree = parse(tokens, highestOpPos + 1, max);
-                result = grammar.makeBinaryFormula(highestOp, leftTree, rightTree);
-                
-            } else {
-                if (highestOpPos != min) {
-                    throw new ExpressionFormatException("Unary operator is not on the left");
-                }
-                
-                T childFormula = parse(tokens, min + 1, max);
-                result = grammar.makeUnaryFormula(highestOp, childFormula);
-                
-            }
-        } else {
-            // unpack the brackets and recursively call parse()
-            
-            if (!(tokens[min] instanceof Bracket) || !(tokens[max] instanceof Bracket)) {
-                throw new ExpressionFormatException("Couldn't find operator");
+        return operands.get(0);
+    }
+    
+    /**
+     * Applies the operators on top of the operator stack to the operands on top of the operand stack. Stops at
+     * the first opening bracket, or at the first operator that does not have a lower precedence level than
+     * <code>next</code>.
+     * 
+     * @param tokens The flat buffer of tokens.
+     * @param pending The operator stack; contains indices into <code>tokens</code>.
+     * @param numPending The number of elements on the operator stack.
+     * @param operands The operand stack. The results of the operators are pushed here.
+     * @param next The operator that will be pushed next. <code>null</code> if all operators up to the next
+     *      opening bracket should be applied.
+     * @return The number of elements left on the operator stack.
+     * 
+     * @throws ExpressionFormatException If the {@link Grammar} can't construct a formula.
+     */
+    private int applyOperators(TokenBuffer tokens, int[] pending, int numPending, List<T> operands, Operator next)
+            throws ExpressionFormatException {
+        
+        while (numPending > 0 && tokens.types[pending[numPending - 1]] == OPERATOR) {
+            Operator op = tokens.operators[pending[numPending - 1]];
+            if (next != null && op.getPrecedence() >= next.getPrecedence()) {
+                break;
             }
+            numPending--;
             
-            Bracket first = (Bracket) tokens[min];
-            Bracket last = (Bracket) tokens[max];
-            
-            if (first.isClosing() || !last.isClosing()) {
-                throw new ExpressionFormatException("Unbalanced brackets");
+            T result;
+            if (op.isBinary()) {
+                T right = operands.remove(operands.size() - 1);
+                T left = operands.remove(operands.size() - 1);
+                result = grammar.makeBinaryFormula(op, left, right);
+            } else {
+                T child = operands.remove(operands.size() - 1);
+                result = grammar.makeUnaryFormula(op, child);
             }
-            
-            result = parse(tokens, min + 1, max - 1);
+            operands.add(result);
+        }
+        
+        return numPending;
+    }
+    
+    /**
+     * The tokens found by the lexer, stored in parallel arrays instead of {@link Token} objects. Identifiers
+     * are stored as offsets into the expression.
+     */
+    private static final class TokenBuffer {
+        
+        private int[] types;
+        
+        private int[] starts;
+        
+        private int[] ends;
+        
+        private Operator[] operators;
+        
+        private int size;
+        
+        /**
+         * Creates an empty buffer.
+         * 
+         * @param capacity The maximum number of tokens.
+         */
+        private TokenBuffer(int capacity) {
+            types = new int[capacity];
+            starts = new int[capacity];
+            ends = new int[capacity];
+            operators = new Operator[capacity];
+        }
+        
+        /**
+         * Adds a token at the end of this buffer.
+         * 
+         * @param type The type of token.
+         * @param start The position of the token in the expression.
+         * @param operator The operator, if this is an operator token; <code>null</code> otherwise.
+         */
+        private void add(int type, int start, Operator operator) {
+            types[size] = type;
+            starts[size] = start;
+            ends[size] = start + 1;
+            operators[size] = operator;
+            size++;
         }
         
-        return result;
     }
     
 }
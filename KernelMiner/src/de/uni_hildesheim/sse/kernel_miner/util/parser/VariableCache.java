@@ -1,7 +1,7 @@
 package de.uni_hildesheim.sse.kernel_miner.util.parser;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import de.uni_hildesheim.sse.kernel_miner.util.logic.Formula;
 import de.uni_hildesheim.sse.kernel_miner.util.logic.Variable;
@@ -10,18 +10,21 @@ import de.uni_hildesheim.sse.kernel_miner.util.logic.Variable;
  * A cache to help ensure that a {@link Formula} does not contain duplicate
  * {@link Variable} objects with the same name. Each instance of {@link Variable}
  * should always be obtained through {@link #getVariable(String)}.
+ * <p>
+ * This class is thread-safe; several parsers may share one cache.
+ * </p>
  * 
  * @author Adam Krafczyk
  */
 public class VariableCache {
-
+    
     private Map<String, Variable> variables;
     
     /**
      * Initializes an empty cache.
      */
     public VariableCache() {
-        variables = new HashMap<>();
+        variables = new ConcurrentHashMap<>();
     }
     
     /**
@@ -35,7 +38,10 @@ public class VariableCache {
         Variable var = variables.get(name);
         if (var == null) {
             var = new Variable(name);
-            variables.put(name, var);
+            Variable existing = variables.putIfAbsent(name, var);
+            if (existing != null) {
+                var = existing;
+            }
         }
         return var;
     }
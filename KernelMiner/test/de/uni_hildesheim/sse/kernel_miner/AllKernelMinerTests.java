@@ -6,12 +6,14 @@ import org.junit.runners.Suite.SuiteClasses;
 
 import de.uni_hildesheim.sse.kernel_miner.code.AllCodeTests;
 import de.uni_hildesheim.sse.kernel_miner.kbuild.AllKbuildTests;
+import de.uni_hildesheim.sse.kernel_miner.run.AllRunTests;
 import de.uni_hildesheim.sse.kernel_miner.util.AllUtilTests;
 
 @RunWith(Suite.class)
 @SuiteClasses({
     AllCodeTests.class,
     AllKbuildTests.class,
+    AllRunTests.class,
     AllUtilTests.class,
 })
 public class AllKernelMinerTests {
@@ -4,9 +4,18 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import de.uni_hildesheim.sse.kernel_miner.code.typechef.BlockBuilderTest;
+import de.uni_hildesheim.sse.kernel_miner.code.typechef.PresenceConditionCacheTest;
+import de.uni_hildesheim.sse.kernel_miner.code.typechef.ProtocolTest;
+import de.uni_hildesheim.sse.kernel_miner.code.typechef.ResultCacheTest;
+
 @RunWith(Suite.class)
 @SuiteClasses({
     BlockTest.class,
+    BlockBuilderTest.class,
+    PresenceConditionCacheTest.class,
+    ProtocolTest.class,
+    ResultCacheTest.class,
     TypeChefPresenceConditionGrammarTest.class,
     TypeChefTest.class,
 })
@@ -0,0 +1,58 @@
+package de.uni_hildesheim.sse.kernel_miner.code.typechef;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.uni_hildesheim.sse.kernel_miner.code.Block;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.Formula;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.Negation;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.True;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.Variable;
+
+public class BlockBuilderTest {
+    
+    private static final File SOURCE_DIR = new File("testdata").getAbsoluteFile();
+    
+    @Test
+    public void testBlocks() {
+        String file = "file " + new File(SOURCE_DIR, "file.c").getPath();
+        String header = "file " + new File(SOURCE_DIR, "include/header.h").getPath();
+        Formula a = new Variable("CONFIG_A");
+        
+        BlockBuilder builder = new BlockBuilder(SOURCE_DIR);
+        builder.addToken("int", new True(), file, 1);
+        builder.addToken("a", new True(), file, 1);
+        builder.addToken(";", new True(), file, 1);
+        builder.addToken("int", a, file, 3);
+        // equal, but not the same instance
+        builder.addToken("b", new Variable("CONFIG_A"), file, 3);
+        builder.addToken("int", a, header, 10);
+        builder.addToken("c", new Negation(a), header, 12);
+        builder.addToken("<eof>", new True(), null, -1);
+        
+        List<Block> blocks = builder.getBlocks();
+        Assert.assertEquals(5, blocks.size());
+        
+        assertBlock(blocks.get(0), "file.c", 1, "1", 2);
+        assertBlock(blocks.get(1), "file.c", 3, "CONFIG_A", 1);
+        assertBlock(blocks.get(2), "include/header.h", 10, "CONFIG_A", 0);
+        assertBlock(blocks.get(3), "include/header.h", 12, "!CONFIG_A", 0);
+        Assert.assertEquals(-1, blocks.get(4).getPiLineNumber());
+        Assert.assertEquals(8, builder.getNumTokens());
+        
+        builder.reset();
+        Assert.assertTrue(builder.getBlocks().isEmpty());
+        Assert.assertEquals(0, builder.getNumTokens());
+    }
+    
+    private static void assertBlock(Block block, String location, int line, String pc, int numLines) {
+        Assert.assertEquals(location, block.getLocation());
+        Assert.assertEquals(line, block.getPiLineNumber());
+        Assert.assertEquals(pc, block.getPresenceCondition().toString());
+        Assert.assertEquals(numLines, block.getLines().size());
+    }
+    
+}
@@ -0,0 +1,43 @@
+package de.uni_hildesheim.sse.kernel_miner.code.typechef;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import de.fosd.typechef.featureexpr.FeatureExpr;
+
+/**
+ * Creates fake {@link FeatureExpr}s for the tests, without the BDD or SAT implementations of TypeChef.
+ * 
+ * @author Adam Krafczyk
+ */
+class FakeFeatureExprs {
+    
+    /**
+     * Creates a fake {@link FeatureExpr} that only supports {@link FeatureExpr#toTextExpr()}. Two instances are
+     * only equal if they are the same instance, even if they have the same text.
+     * 
+     * @param text The text that {@link FeatureExpr#toTextExpr()} returns.
+     * @return The fake {@link FeatureExpr}.
+     */
+    static FeatureExpr createFeature(final String text) {
+        return (FeatureExpr) Proxy.newProxyInstance(FakeFeatureExprs.class.getClassLoader(),
+                new Class<?>[] {FeatureExpr.class}, new InvocationHandler() {
+                    
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        switch (method.getName()) {
+                        case "toTextExpr":
+                            return text;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                    }
+                });
+    }
+    
+}
@@ -0,0 +1,44 @@
+package de.uni_hildesheim.sse.kernel_miner.code.typechef;
+
+import static de.uni_hildesheim.sse.kernel_miner.code.typechef.FakeFeatureExprs.createFeature;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.fosd.typechef.featureexpr.FeatureExpr;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.Conjunction;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.Formula;
+import de.uni_hildesheim.sse.kernel_miner.util.parser.ExpressionFormatException;
+
+public class PresenceConditionCacheTest {
+    
+    @Test
+    public void testSharedInstances() throws ExpressionFormatException {
+        PresenceConditionCache cache = new PresenceConditionCache();
+        
+        FeatureExpr a = createFeature("definedEx(CONFIG_A)");
+        FeatureExpr aCopy = createFeature("definedEx(CONFIG_A)");
+        FeatureExpr ab = createFeature("(definedEx(CONFIG_A) && definedEx(CONFIG_B))");
+        
+        Formula pcA = cache.getPc(a);
+        Assert.assertEquals("CONFIG_A", pcA.toString());
+        Assert.assertSame(pcA, cache.getPc(a));
+        Assert.assertSame(pcA, cache.getPc(aCopy));
+        
+        Formula pcAB = cache.getPc(ab);
+        Assert.assertEquals("(CONFIG_A && CONFIG_B)", pcAB.toString());
+        Assert.assertSame(pcAB, cache.getPc(ab));
+        Assert.assertSame(pcA, cache.getPc(a));
+        
+        // variables are shared between different presence conditions
+        Assert.assertSame(pcA, ((Conjunction) pcAB).getLeft());
+        
+        Assert.assertEquals(2, cache.getSize());
+    }
+    
+    @Test(expected = ExpressionFormatException.class)
+    public void testInvalid() throws ExpressionFormatException {
+        new PresenceConditionCache().getPc(createFeature("definedEx("));
+    }
+    
+}
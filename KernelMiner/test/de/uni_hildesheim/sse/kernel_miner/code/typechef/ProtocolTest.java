@@ -0,0 +1,180 @@
+package de.uni_hildesheim.sse.kernel_miner.code.typechef;
+
+import static de.uni_hildesheim.sse.kernel_miner.code.typechef.FakeFeatureExprs.createFeature;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.fosd.typechef.LexerToken;
+import de.fosd.typechef.featureexpr.FeatureExpr;
+import de.uni_hildesheim.sse.kernel_miner.code.Block;
+import de.uni_hildesheim.sse.kernel_miner.code.CToken;
+import de.uni_hildesheim.sse.kernel_miner.code.SourceFile;
+import de.uni_hildesheim.sse.kernel_miner.util.parser.ExpressionFormatException;
+
+public class ProtocolTest {
+    
+    @Test
+    public void testParameters() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ProtocolWriter writer = new ProtocolWriter(buffer);
+        writer.writeParameters(Arrays.asList("-I", "include/äöü", ""));
+        writer.writeParameters(new ArrayList<String>());
+        writer.writeStop();
+        
+        ProtocolReader reader = new ProtocolReader(new ByteArrayInputStream(buffer.toByteArray()));
+        Assert.assertEquals(Arrays.asList("-I", "include/äöü", ""), reader.readParameters());
+        Assert.assertEquals(new ArrayList<String>(), reader.readParameters());
+        Assert.assertNull(reader.readParameters());
+        // end of stream
+        Assert.assertNull(reader.readParameters());
+    }
+    
+    @Test
+    public void testTokens() throws IOException, ExpressionFormatException {
+        FeatureExpr pc1 = createFeature("definedEx(CONFIG_A)");
+        FeatureExpr pc2 = createFeature("(definedEx(CONFIG_A) && !definedEx(CONFIG_B))");
+        FeatureExpr pc2Copy = createFeature("(definedEx(CONFIG_A) && !definedEx(CONFIG_B))");
+        
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ProtocolWriter writer = new ProtocolWriter(buffer);
+        writer.writeTokensStart();
+        writer.writeToken(createToken("int", pc1, 1, 0, "file.c"));
+        writer.writeToken(createToken("a", pc2, 300, 4, "file.c"));
+        writer.writeToken(createToken(";", pc2Copy, 300, 5, "header.h"));
+        writer.writeToken(createToken("<eof>", pc1, -1, -1, null));
+        writer.writeError("some error");
+        writer.writeEnd();
+        writer.writeKeepAlive(true);
+        
+        // the dictionaries are reset for the next file
+        writer.writeToken(createToken("b", pc2, 2, 1, "header.h"));
+        writer.writeEnd();
+        writer.writeKeepAlive(false);
+        
+        ProtocolReader reader = new ProtocolReader(new ByteArrayInputStream(buffer.toByteArray()));
+        
+        SourceFile file = new SourceFile(new File("file.c"));
+        List<String> errors = new ArrayList<>();
+        reader.readResult(file, errors);
+        Assert.assertTrue(reader.readKeepAlive());
+        
+        Assert.assertEquals(Arrays.asList("some error"), errors);
+        List<CToken> tokens = file.getTokens();
+        Assert.assertEquals(4, tokens.size());
+        
+        assertToken(tokens.get(0), "int", "CONFIG_A", 1, 0, "file.c");
+        assertToken(tokens.get(1), "a", "(CONFIG_A && !CONFIG_B)", 300, 4, "file.c");
+        assertToken(tokens.get(2), ";", "(CONFIG_A && !CONFIG_B)", 300, 5, "header.h");
+        assertToken(tokens.get(3), "<eof>", "CONFIG_A", -1, -1, null);
+        // equal presence conditions are only sent once
+        Assert.assertSame(tokens.get(1).getPc(), tokens.get(2).getPc());
+        
+        // tokens without TOKENS start are an error; result of the second file
+        file = new SourceFile(new File("file2.c"));
+        try {
+            reader.readResult(file, errors);
+            Assert.fail("Expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+    
+    @Test
+    public void testBlocks() throws IOException, ExpressionFormatException {
+        File sourceDir = new File("testdata").getAbsoluteFile();
+        String source = "file " + new File(sourceDir, "file.c").getPath();
+        FeatureExpr pc1 = createFeature("definedEx(CONFIG_A)");
+        FeatureExpr pc2 = createFeature("!definedEx(CONFIG_A)");
+        
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ProtocolWriter writer = new ProtocolWriter(buffer);
+        writer.writeTokensStart();
+        writer.writeToken(createToken("int", pc1, 1, 0, source));
+        writer.writeToken(createToken("a", pc1, 1, 4, source));
+        writer.writeToken(createToken("int", pc2, 3, 0, source));
+        writer.writeEnd();
+        writer.writeKeepAlive(true);
+        
+        ProtocolReader reader = new ProtocolReader(new ByteArrayInputStream(buffer.toByteArray()));
+        SourceFile file = new SourceFile(new File("file.c"));
+        Assert.assertTrue(reader.readResult(file, new ArrayList<String>(), new BlockBuilder(sourceDir)));
+        
+        Assert.assertNull(file.getTokens());
+        List<Block> blocks = file.getBlocks();
+        Assert.assertEquals(2, blocks.size());
+        Assert.assertEquals("file.c", blocks.get(0).getLocation());
+        Assert.assertEquals("CONFIG_A", blocks.get(0).getPresenceCondition().toString());
+        Assert.assertEquals("!CONFIG_A", blocks.get(1).getPresenceCondition().toString());
+        Assert.assertEquals(3, blocks.get(1).getPiLineNumber());
+    }
+    
+    @Test
+    public void testTokensAborted() throws IOException, ExpressionFormatException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ProtocolWriter writer = new ProtocolWriter(buffer);
+        writer.writeTokensStart();
+        writer.writeToken(createToken("int", createFeature("definedEx(CONFIG_A)"), 1, 0, "file.c"));
+        try {
+            writer.writeToken(createToken("a", createFeature("definedEx("), 1, 4, "file.c"));
+            Assert.fail("Expected ExpressionFormatException");
+        } catch (ExpressionFormatException e) {
+            // expected
+        }
+        writer.writeTokensAborted();
+        writer.writeEnd();
+        writer.writeKeepAlive(false);
+        
+        ProtocolReader reader = new ProtocolReader(new ByteArrayInputStream(buffer.toByteArray()));
+        SourceFile file = new SourceFile(new File("file.c"));
+        Assert.assertFalse(reader.readResult(file, new ArrayList<String>()));
+        Assert.assertNull(file.getTokens());
+        Assert.assertFalse(reader.readKeepAlive());
+    }
+    
+    private static void assertToken(CToken token, String text, String pc, int line, int column, String source) {
+        Assert.assertEquals(text, token.getText());
+        Assert.assertEquals(pc, token.getPc().toString());
+        Assert.assertEquals(line, token.getLine());
+        Assert.assertEquals(column, token.getColumn());
+        Assert.assertEquals(source, token.getSourceName());
+    }
+    
+    private static LexerToken createToken(final String text, final FeatureExpr pc, final int line, final int column,
+            final String source) {
+        
+        return (LexerToken) Proxy.newProxyInstance(ProtocolTest.class.getClassLoader(),
+                new Class<?>[] {LexerToken.class}, new InvocationHandler() {
+                    
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        switch (method.getName()) {
+                        case "getText":
+                            return text;
+                        case "getFeature":
+                            return pc;
+                        case "getLine":
+                            return line;
+                        case "getColumn":
+                            return column;
+                        case "getSourceName":
+                            return source;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                    }
+                });
+    }
+    
+}
@@ -0,0 +1,194 @@
+package de.uni_hildesheim.sse.kernel_miner.code.typechef;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.uni_hildesheim.sse.kernel_miner.code.Block;
+import de.uni_hildesheim.sse.kernel_miner.code.SourceFile;
+import de.uni_hildesheim.sse.kernel_miner.util.Files;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.Variable;
+
+public class ResultCacheTest {
+    
+    private static final List<String> PARAMS = Arrays.asList("--lex", "--incdir=$SOURCE/include");
+    
+    private File tmpDir;
+    
+    private File cacheDir;
+    
+    @Before
+    public void setUp() throws IOException {
+        tmpDir = File.createTempFile("result_cache", "");
+        tmpDir.delete();
+        tmpDir.mkdir();
+        cacheDir = new File(tmpDir, "cache");
+    }
+    
+    @After
+    public void tearDown() {
+        delete(tmpDir);
+    }
+    
+    @Test
+    public void testStoreAndLoad() throws IOException {
+        File sourceDir = createSourceTree("linux-1", "int b;");
+        List<File> includeDirs = getIncludeDirs(sourceDir);
+        ResultCache cache = new ResultCache(cacheDir, sourceDir);
+        
+        SourceFile file = createFile();
+        String key = cache.getConfigurationKey(file, PARAMS);
+        Assert.assertFalse(cache.load(file, key, includeDirs));
+        
+        file.setBlocks(createBlocks());
+        file.setNumTokens(5);
+        cache.store(file, key, Collections.<File>emptyList(), includeDirs);
+        
+        SourceFile loaded = createFile();
+        Assert.assertTrue(cache.load(loaded, cache.getConfigurationKey(loaded, PARAMS), includeDirs));
+        Assert.assertEquals(5, loaded.getNumTokens());
+        Assert.assertEquals(2, loaded.getBlocks().size());
+        Assert.assertEquals(file.getBlocks().get(0).toString(), loaded.getBlocks().get(0).toString());
+        Assert.assertEquals(file.getBlocks().get(1).toString(), loaded.getBlocks().get(1).toString());
+        Assert.assertEquals(3, loaded.getBlocks().get(1).getPiLineNumber());
+        
+        // different parameters or presence condition
+        Assert.assertFalse(cache.load(loaded, cache.getConfigurationKey(loaded, Arrays.asList("--lex")),
+                includeDirs));
+        loaded.setPresenceCondition(new Variable("CONFIG_B"));
+        Assert.assertFalse(cache.load(loaded, cache.getConfigurationKey(loaded, PARAMS), includeDirs));
+        
+        // the lexer output is not stored
+        for (File dir : cacheDir.listFiles()) {
+            for (File entry : dir.listFiles()) {
+                Assert.assertFalse(entry.getName().endsWith(".pi"));
+            }
+        }
+    }
+    
+    @Test
+    public void testOtherSourceTree() throws IOException {
+        File sourceDir = createSourceTree("linux-1", "int b;");
+        ResultCache cache = new ResultCache(cacheDir, sourceDir);
+        
+        SourceFile file = createFile();
+        file.setBlocks(createBlocks());
+        cache.store(file, cache.getConfigurationKey(file, PARAMS), Collections.<File>emptyList(),
+                getIncludeDirs(sourceDir));
+        
+        // same contents in a different location
+        sourceDir = createSourceTree("linux-2", "int b;");
+        cache = new ResultCache(cacheDir, sourceDir);
+        file = createFile();
+        Assert.assertTrue(cache.load(file, cache.getConfigurationKey(file, PARAMS), getIncludeDirs(sourceDir)));
+        
+        // the included header changed
+        sourceDir = createSourceTree("linux-3", "int b, c;");
+        cache = new ResultCache(cacheDir, sourceDir);
+        file = createFile();
+        Assert.assertFalse(cache.load(file, cache.getConfigurationKey(file, PARAMS), getIncludeDirs(sourceDir)));
+    }
+    
+    @Test
+    public void testHeaderWithoutTokens() throws IOException {
+        File sourceDir = createSourceTree("linux-1", "int b;");
+        List<File> includeDirs = getIncludeDirs(sourceDir);
+        ResultCache cache = new ResultCache(cacheDir, sourceDir);
+        
+        SourceFile file = createFile();
+        file.setBlocks(createBlocks());
+        cache.store(file, cache.getConfigurationKey(file, PARAMS), Collections.<File>emptyList(), includeDirs);
+        
+        // a header that only defines macros does not appear in the blocks, but still changes the result
+        Files.writeFile(new File(sourceDir, "include/macros.h"), "#define B 2\n");
+        cache = new ResultCache(cacheDir, sourceDir);
+        Assert.assertFalse(cache.load(file, cache.getConfigurationKey(file, PARAMS), includeDirs));
+    }
+    
+    @Test
+    public void testNewHeader() throws IOException {
+        File sourceDir = createSourceTree("linux-1", "int b;");
+        List<File> includeDirs = Arrays.asList(new File(sourceDir, "arch/include"), new File(sourceDir, "include"));
+        ResultCache cache = new ResultCache(cacheDir, sourceDir);
+        
+        SourceFile file = createFile();
+        file.setBlocks(createBlocks());
+        cache.store(file, cache.getConfigurationKey(file, PARAMS), Collections.<File>emptyList(), includeDirs);
+        cache = new ResultCache(cacheDir, sourceDir);
+        Assert.assertTrue(cache.load(file, cache.getConfigurationKey(file, PARAMS), includeDirs));
+        
+        // a new header that shadows include/macros.h
+        new File(sourceDir, "arch/include").mkdirs();
+        Files.writeFile(new File(sourceDir, "arch/include/macros.h"), "#define B 2\n");
+        cache = new ResultCache(cacheDir, sourceDir);
+        Assert.assertFalse(cache.load(file, cache.getConfigurationKey(file, PARAMS), includeDirs));
+    }
+    
+    @Test
+    public void testStaticDependencies() throws IOException {
+        File sourceDir = createSourceTree("linux-1", "int b;");
+        File platformHeader = new File(tmpDir, "platform.h");
+        Files.writeFile(platformHeader, "#define A");
+        List<File> includeDirs = getIncludeDirs(sourceDir);
+        ResultCache cache = new ResultCache(cacheDir, sourceDir);
+        
+        SourceFile file = createFile();
+        file.setBlocks(createBlocks());
+        cache.store(file, cache.getConfigurationKey(file, PARAMS), Arrays.asList(platformHeader), includeDirs);
+        
+        Assert.assertTrue(cache.load(file, cache.getConfigurationKey(file, PARAMS), includeDirs));
+        
+        Files.writeFile(platformHeader, "#define B");
+        cache = new ResultCache(cacheDir, sourceDir);
+        Assert.assertFalse(cache.load(file, cache.getConfigurationKey(file, PARAMS), includeDirs));
+    }
+    
+    private SourceFile createFile() {
+        SourceFile file = new SourceFile(new File("file.c"));
+        file.setPresenceCondition(new Variable("CONFIG_A"));
+        return file;
+    }
+    
+    private List<Block> createBlocks() {
+        List<Block> blocks = new ArrayList<>();
+        Block block = new Block(new Variable("CONFIG_A"), "file.c", 1);
+        block.addLine("int a;");
+        blocks.add(block);
+        block = new Block(new Variable("CONFIG_B"), "include/header.h", 3);
+        block.addLine("int b;");
+        blocks.add(block);
+        return blocks;
+    }
+    
+    private File createSourceTree(String name, String header) throws IOException {
+        File sourceDir = new File(tmpDir, name);
+        new File(sourceDir, "include").mkdirs();
+        Files.writeFile(new File(sourceDir, "file.c"), "#include <header.h>\nint a;\n");
+        Files.writeFile(new File(sourceDir, "include/header.h"), "#include \"macros.h\"\n" + header + "\n");
+        Files.writeFile(new File(sourceDir, "include/macros.h"), "#define B 1\n");
+        return sourceDir;
+    }
+    
+    private static List<File> getIncludeDirs(File sourceDir) {
+        return Arrays.asList(new File(sourceDir, "include"));
+    }
+    
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+    
+}
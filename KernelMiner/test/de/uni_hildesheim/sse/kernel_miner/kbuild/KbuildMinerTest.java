@@ -4,6 +4,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -55,6 +57,28 @@ public class KbuildMinerTest {
                 files.get(72).getPresenceCondition().toString());
     }
     
+    @Test
+    public void testReadOutputStreaming() throws IOException {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        Logger.init(log);
+        
+        File pcs = new File(TESTDATA, "pcs.txt");
+        
+        final Queue<SourceFile> files = new ConcurrentLinkedQueue<>();
+        KbuildMiner.readOutput(pcs, new KbuildMiner.SourceFileHandler() {
+            
+            @Override
+            public void handle(SourceFile file) {
+                Assert.assertNotNull(file.getPresenceCondition());
+                files.add(file);
+            }
+            
+        });
+        
+        Assert.assertEquals(15952, files.size());
+        Assert.assertEquals("", log.toString());
+    }
+    
     @Test
     public void testReadInvalidPcs() throws IOException {
         ByteArrayOutputStream log = new ByteArrayOutputStream();
@@ -78,5 +102,22 @@ public class KbuildMinerTest {
             Assert.assertNull(file.getPresenceCondition());
         }
     }
+    
+    @Test
+    public void testReadMalformedLine() throws IOException {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        Logger.init(log);
+        
+        File pcs = new File(TESTDATA, "malformed_pcs.txt");
+        
+        List<SourceFile> files = KbuildMiner.readOutput(pcs);
+        Assert.assertEquals(2, files.size());
+        Assert.assertEquals(new File("arch/x86/a.c"), files.get(0).getPath());
+        Assert.assertEquals(new File("arch/x86/b.c"), files.get(1).getPath());
+        
+        String output = log.toString();
+        Assert.assertTrue(output.startsWith("[error]"));
+        Assert.assertTrue(output.contains("no colon in this line"));
+    }
 
 }
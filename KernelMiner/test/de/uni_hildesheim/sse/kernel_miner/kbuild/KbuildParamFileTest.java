@@ -64,6 +64,28 @@ public class KbuildParamFileTest {
         Assert.assertTrue(params3.contains("-DSPECIAL_FILE"));
     }
     
+    @Test
+    public void testDirectoryOrder() throws IOException {
+        KbuildParamFile paramFile = new KbuildParamFile(new File(TESTDATA, "directories.sh"));
+        
+        SourceFile sourceFile1 = new SourceFile(new File("src/dir/file3.c"));
+        List<String> params1 = paramFile.getExtraParameters(sourceFile1);
+        Assert.assertEquals(3, params1.size());
+        Assert.assertEquals("-D__KERNEL__", params1.get(0));
+        Assert.assertEquals("-DDIR_MODULE", params1.get(1));
+        Assert.assertEquals("-DSPECIAL_FILE", params1.get(2));
+        
+        // only complete path segments match
+        SourceFile sourceFile2 = new SourceFile(new File("src/directory/file.c"));
+        List<String> params2 = paramFile.getExtraParameters(sourceFile2);
+        Assert.assertEquals(1, params2.size());
+        Assert.assertEquals("-D__KERNEL__", params2.get(0));
+        
+        SourceFile sourceFile3 = new SourceFile(new File("srcfile.c"));
+        List<String> params3 = paramFile.getExtraParameters(sourceFile3);
+        Assert.assertEquals(0, params3.size());
+    }
+    
     @Test
     public void testMultipleWithOrder() throws IOException {
         KbuildParamFile paramFile = new KbuildParamFile(new File(TESTDATA, "multiple.sh"));
@@ -140,6 +162,33 @@ public class KbuildParamFileTest {
         Assert.assertEquals(2, params1.size());
         Assert.assertEquals("-I", params1.get(0));
         Assert.assertEquals("testTest/include", params1.get(1));
+        
+        paramFile.setSourceDir(new File("otherDir"));
+        List<String> params2 = paramFile.getExtraParameters(sourceFile1);
+        Assert.assertEquals("otherDir/include", params2.get(1));
+    }
+    
+    @Test
+    public void testResolvedCache() throws IOException {
+        KbuildParamFile paramFile = new KbuildParamFile(new File(TESTDATA, "directories.sh"));
+        
+        // like TypeChef, set the source directory before each file
+        SourceFile special = new SourceFile(new File("src/dir/file3.c"));
+        for (int i = 0; i < 100; i++) {
+            paramFile.setSourceDir(new File("testTest"));
+            Assert.assertEquals(3, paramFile.getExtraParameters(special).size());
+            
+            paramFile.setSourceDir(new File("testTest"));
+            SourceFile other = new SourceFile(new File("src/dir/other" + i + ".c"));
+            Assert.assertEquals(2, paramFile.getExtraParameters(other).size());
+        }
+        // the root, src, src/dir and src/dir/file3.c are only resolved once
+        Assert.assertEquals(4, paramFile.getNumResolved());
+        
+        // a different source directory clears the cache
+        paramFile.setSourceDir(new File("otherDir"));
+        Assert.assertEquals(3, paramFile.getExtraParameters(special).size());
+        Assert.assertEquals(8, paramFile.getNumResolved());
     }
     
 }
@@ -0,0 +1,65 @@
+package de.uni_hildesheim.sse.kernel_miner.run;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.uni_hildesheim.sse.kernel_miner.util.Logger;
+
+public class AdaptiveLimiterTest {
+    
+    @Before
+    public void setUp() {
+        Logger.init(new ByteArrayOutputStream());
+    }
+    
+    @Test
+    public void testHeapHeadroom() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(8, true);
+        Assert.assertEquals(8, limiter.getLimit());
+        
+        limiter.adjust(AdaptiveLimiter.LOW_HEADROOM / 2);
+        Assert.assertEquals(4, limiter.getLimit());
+        limiter.adjust(AdaptiveLimiter.LOW_HEADROOM / 2);
+        limiter.adjust(AdaptiveLimiter.LOW_HEADROOM / 2);
+        limiter.adjust(AdaptiveLimiter.LOW_HEADROOM / 2);
+        Assert.assertEquals(1, limiter.getLimit());
+        
+        // between the thresholds nothing changes
+        limiter.adjust((AdaptiveLimiter.LOW_HEADROOM + AdaptiveLimiter.HIGH_HEADROOM) / 2);
+        Assert.assertEquals(1, limiter.getLimit());
+        
+        for (int i = 0; i < 10; i++) {
+            limiter.adjust(1.0);
+        }
+        Assert.assertEquals(8, limiter.getLimit());
+    }
+    
+    @Test
+    public void testNotAdaptive() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(8, false);
+        limiter.adjust(0.0);
+        Assert.assertEquals(8, limiter.getLimit());
+    }
+    
+    @Test
+    public void testHeavyRuns() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(4, true);
+        limiter.release(limiter.acquire());
+        limiter.adjust(1.0);
+        
+        long start1 = limiter.acquire();
+        long start2 = limiter.acquire();
+        Assert.assertEquals(4, limiter.getEffectiveLimit(start2));
+        
+        // both runs take much longer than the previous one
+        Assert.assertEquals(2, limiter.getEffectiveLimit(start2 + 3600 * 1000));
+        
+        limiter.release(start1);
+        limiter.release(start2);
+        Assert.assertEquals(4, limiter.getEffectiveLimit(start2 + 3600 * 1000));
+    }
+    
+}
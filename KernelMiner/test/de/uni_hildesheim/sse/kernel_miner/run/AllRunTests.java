@@ -0,0 +1,15 @@
+package de.uni_hildesheim.sse.kernel_miner.run;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+
+@RunWith(Suite.class)
+@SuiteClasses({
+    AdaptiveLimiterTest.class,
+    CostModelTest.class,
+    RunManifestTest.class,
+})
+public class AllRunTests {
+
+}
@@ -0,0 +1,95 @@
+package de.uni_hildesheim.sse.kernel_miner.run;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.PriorityQueue;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.uni_hildesheim.sse.kernel_miner.code.SourceFile;
+import de.uni_hildesheim.sse.kernel_miner.util.Files;
+
+public class CostModelTest {
+    
+    private static final File TESTDATA = new File("testdata/CostModelTest");
+    
+    @Test
+    public void testSizeEstimate() {
+        CostModel model = new CostModel(TESTDATA);
+        
+        SourceFile small = new SourceFile(new File("small.c"));
+        SourceFile big = new SourceFile(new File("big.c"));
+        SourceFile missing = new SourceFile(new File("missing.c"));
+        
+        // length * (1 + number of includes)
+        Assert.assertEquals(new File(TESTDATA, "small.c").length() * 2, model.estimate(small), 0.0);
+        Assert.assertEquals(new File(TESTDATA, "big.c").length() * 4, model.estimate(big), 0.0);
+        Assert.assertEquals(0.0, model.estimate(missing), 0.0);
+        
+        PriorityQueue<SourceFile> queue = new PriorityQueue<>(3, model.getComparator());
+        queue.add(small);
+        queue.add(missing);
+        queue.add(big);
+        
+        Assert.assertSame(big, queue.poll());
+        Assert.assertSame(small, queue.poll());
+        Assert.assertSame(missing, queue.poll());
+    }
+    
+    @Test
+    public void testHistory() throws IOException {
+        File history = File.createTempFile("cost_history", ".txt");
+        history.delete();
+        try {
+            CostModel model = new CostModel(TESTDATA, history);
+            model.record(new SourceFile(new File("small.c")), 1000);
+            model.record(new SourceFile(new File("small.c")), 3000);
+            model.close();
+            
+            Assert.assertEquals("small.c;1000\nsmall.c;3000\n", Files.readFile(history));
+            
+            model = new CostModel(TESTDATA, history);
+            SourceFile small = new SourceFile(new File("small.c"));
+            SourceFile big = new SourceFile(new File("big.c"));
+            
+            // the last recorded duration is used
+            Assert.assertEquals(3000.0, model.estimate(small), 0.0);
+            
+            // scaled by the ratio of the recorded duration to the size of small.c
+            double smallSize = new File(TESTDATA, "small.c").length() * 2;
+            double bigSize = new File(TESTDATA, "big.c").length() * 4;
+            Assert.assertEquals(bigSize * 3000 / smallSize, model.estimate(big), 0.001);
+            model.close();
+            
+        } finally {
+            history.delete();
+        }
+    }
+    
+    @Test
+    public void testUnrecordedBeforeRecorded() throws IOException {
+        File history = File.createTempFile("cost_history", ".txt");
+        history.delete();
+        try {
+            CostModel model = new CostModel(TESTDATA, history);
+            model.record(new SourceFile(new File("small.c")), 3000);
+            model.close();
+            
+            model = new CostModel(TESTDATA, history);
+            SourceFile small = new SourceFile(new File("small.c"));
+            SourceFile big = new SourceFile(new File("big.c"));
+            
+            // big.c is scaled, even though small.c wasn't estimated yet
+            double smallSize = new File(TESTDATA, "small.c").length() * 2;
+            double bigSize = new File(TESTDATA, "big.c").length() * 4;
+            Assert.assertEquals(bigSize * 3000 / smallSize, model.estimate(big), 0.001);
+            Assert.assertEquals(3000.0, model.estimate(small), 0.0);
+            model.close();
+            
+        } finally {
+            history.delete();
+        }
+    }
+    
+}
@@ -0,0 +1,77 @@
+package de.uni_hildesheim.sse.kernel_miner.run;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.uni_hildesheim.sse.kernel_miner.code.SourceFile;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.Variable;
+
+public class RunManifestTest {
+    
+    private static final File TESTDATA = new File("testdata/CostModelTest");
+    
+    @Test
+    public void testFingerprint() {
+        SourceFile file = new SourceFile(new File("small.c"));
+        String fingerprint = RunManifest.getFingerprint(TESTDATA, file);
+        Assert.assertEquals(32, fingerprint.length());
+        Assert.assertEquals(fingerprint, RunManifest.getFingerprint(TESTDATA, file));
+        
+        // the presence condition is part of the fingerprint
+        file.setPresenceCondition(new Variable("CONFIG_A"));
+        Assert.assertNotEquals(fingerprint, RunManifest.getFingerprint(TESTDATA, file));
+        
+        Assert.assertNotEquals(fingerprint, RunManifest.getFingerprint(TESTDATA, new SourceFile(new File("big.c"))));
+        Assert.assertEquals("-", RunManifest.getFingerprint(TESTDATA, new SourceFile(new File("missing.c"))));
+    }
+    
+    @Test
+    public void testRestart() throws IOException {
+        File manifestFile = File.createTempFile("run", ".manifest");
+        manifestFile.delete();
+        try {
+            SourceFile small = new SourceFile(new File("small.c"));
+            SourceFile big = new SourceFile(new File("big.c"));
+            
+            RunManifest manifest = new RunManifest(manifestFile);
+            Assert.assertFalse(manifest.existed());
+            Assert.assertFalse(manifest.isCompleted(small, "abc"));
+            
+            manifest.record(small, RunManifest.Status.DONE, 100, "abc");
+            manifest.record(big, RunManifest.Status.FAILED, 200, "def");
+            Assert.assertTrue(manifest.isCompleted(small, "abc"));
+            manifest.close();
+            
+            // simulate a crash while writing the last entry
+            try (Writer out = new FileWriter(manifestFile, true)) {
+                out.write("other.c;DO");
+            }
+            
+            manifest = new RunManifest(manifestFile);
+            Assert.assertTrue(manifest.existed());
+            Assert.assertTrue(manifest.isCompleted(small, "abc"));
+            // changed since the last run
+            Assert.assertFalse(manifest.isCompleted(small, "xyz"));
+            // failed files are retried
+            Assert.assertFalse(manifest.isCompleted(big, "def"));
+            Assert.assertFalse(manifest.isCompleted(new SourceFile(new File("other.c")), "abc"));
+            
+            // later entries override earlier ones
+            manifest.record(big, RunManifest.Status.SKIPPED, 0, "def");
+            manifest.close();
+            
+            manifest = new RunManifest(manifestFile);
+            Assert.assertTrue(manifest.isCompleted(big, "def"));
+            manifest.close();
+            
+        } finally {
+            manifestFile.delete();
+        }
+    }
+    
+}
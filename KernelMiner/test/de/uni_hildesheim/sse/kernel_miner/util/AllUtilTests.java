@@ -4,16 +4,21 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import de.uni_hildesheim.sse.kernel_miner.util.logic.FormulaFactoryTest;
 import de.uni_hildesheim.sse.kernel_miner.util.logic.FormulaTest;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.solver.SatSolverTest;
 import de.uni_hildesheim.sse.kernel_miner.util.parser.ParserTest;
 
 @RunWith(Suite.class)
 @SuiteClasses({
     FilesTest.class,
+    FormulaFactoryTest.class,
     FormulaTest.class,
     LoggerTest.class,
     ParserTest.class,
+    SatSolverTest.class,
     ZipArchiveTest.class,
+    ZipArchiveWriterTest.class,
 })
 public class AllUtilTests {
 
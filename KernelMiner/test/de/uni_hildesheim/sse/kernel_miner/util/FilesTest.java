@@ -1,9 +1,11 @@
 package de.uni_hildesheim.sse.kernel_miner.util;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.charset.Charset;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -148,5 +150,73 @@ public class FilesTest {
         
         toWrite.delete();
     }
-
+    
+    @Test
+    public void testCopyBinary() throws IOException {
+        // bigger than the buffers used for copying, and not valid UTF-8
+        byte[] content = new byte[3 * 1024 * 1024 + 17];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        
+        File file = File.createTempFile("testCopy", ".bin");
+        file.deleteOnExit();
+        
+        Files.copy(new ByteArrayInputStream(content), file);
+        Assert.assertEquals(content.length, file.length());
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Files.copy(file, out);
+        Assert.assertArrayEquals(content, out.toByteArray());
+        
+        // overwrite with shorter content
+        Files.copy(new ByteArrayInputStream(new byte[] {1, 2, 3}), file);
+        out = new ByteArrayOutputStream();
+        Files.copy(file, out);
+        Assert.assertArrayEquals(new byte[] {1, 2, 3}, out.toByteArray());
+        
+        file.delete();
+    }
+    
+    @Test
+    public void testCopyNonExisting() throws IOException {
+        try {
+            Files.copy(new File(TESTDATA, "doesntExist.txt"), new ByteArrayOutputStream());
+            Assert.fail("Expected exception");
+        } catch (FileNotFoundException e) {
+        }
+    }
+    
+    @Test
+    public void testReadStreamSizeHint() throws IOException {
+        String expected = "This is a longer text. It contains more than 512 characters, to check the case that more than one buffer needs to be used.\n";
+        expected = expected + expected + expected + expected;
+        byte[] bytes = expected.getBytes("UTF-8");
+        Charset utf8 = Charset.forName("UTF-8");
+        
+        // exact, too small, too large and no hint
+        Assert.assertEquals(expected, Files.readStream(new ByteArrayInputStream(bytes), utf8, bytes.length));
+        Assert.assertEquals(expected, Files.readStream(new ByteArrayInputStream(bytes), utf8, 3));
+        Assert.assertEquals(expected, Files.readStream(new ByteArrayInputStream(bytes), utf8, 100000));
+        Assert.assertEquals(expected, Files.readStream(new ByteArrayInputStream(bytes), utf8, 0));
+        Assert.assertEquals("", Files.readStream(new ByteArrayInputStream(new byte[0]), utf8, 0));
+    }
+    
+    @Test
+    public void testReadFileMapped() throws IOException {
+        // big enough to be memory-mapped
+        StringBuilder expected = new StringBuilder();
+        while (expected.length() < 2 * 1024 * 1024) {
+            expected.append("Line ").append(expected.length()).append(" with a non-ASCII character: \u00e4\n");
+        }
+        
+        File toRead = File.createTempFile("testReadFileMapped", ".txt");
+        toRead.deleteOnExit();
+        Files.writeFile(toRead, expected.toString());
+        
+        Assert.assertEquals(expected.toString(), Files.readFile(toRead));
+        
+        toRead.delete();
+    }
+    
 }
@@ -1,6 +1,7 @@
 package de.uni_hildesheim.sse.kernel_miner.util;
 
 import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -166,6 +167,75 @@ public class LoggerTest {
         }
     }
     
+    @Test
+    public void testLevelFilter() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Logger.init(out);
+        Logger l = Logger.INSTANCE; // just a shortcut
+        
+        l.setLevel(Logger.Level.WARNING);
+        Assert.assertFalse(l.isEnabled(Logger.Level.INFO));
+        Assert.assertTrue(l.isEnabled(Logger.Level.WARNING));
+        Assert.assertTrue(l.isEnabled(Logger.Level.ERROR));
+        
+        l.logInfo("a");
+        l.logWarning("b");
+        l.logError("c");
+        
+        String[] lines = out.toString().split("\n");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertTrue(lines[0].startsWith("[warning]"));
+        Assert.assertTrue(lines[1].startsWith("[error]"));
+        
+        l.setLevel(Logger.Level.ERROR);
+        l.logWarning("d");
+        l.logException("e", new Exception());
+        Assert.assertFalse(out.toString().contains("d\n"));
+        Assert.assertTrue(out.toString().contains("e:\n"));
+    }
+    
+    @Test
+    public void testIndent() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Logger.init(out);
+        
+        Thread.currentThread().setName("test");
+        Logger.INSTANCE.logInfo("line 1", "line 2");
+        
+        String[] lines = out.toString().split("\n");
+        Assert.assertEquals(lines[0].length(), lines[1].length());
+        Assert.assertTrue(lines[1].trim().equals("line 2"));
+    }
+    
+    @Test
+    public void testAsync() throws InterruptedException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Logger.init(out, Charset.forName("UTF-8"), true);
+        
+        Worker w1 = new Worker("worker 1", "message 1");
+        Worker w2 = new Worker("worker 2", "message 2");
+        Thread t1 = new Thread(w1);
+        Thread t2 = new Thread(w2);
+        t1.start();
+        t2.start();
+        t1.join();
+        t2.join();
+        
+        Logger.INSTANCE.close();
+        
+        String[] lines = out.toString().split("\n");
+        Assert.assertEquals(2 * 1000, lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            Assert.assertTrue(lines[i].startsWith("[info]"));
+            int number = Integer.parseInt(lines[i].substring(lines[i].length() - 1));
+            Assert.assertTrue(lines[i].endsWith("[worker " + number + "] message " + number));
+        }
+        
+        // written directly after closing
+        Logger.INSTANCE.logInfo("after close");
+        Assert.assertTrue(out.toString().endsWith("after close\n"));
+    }
+    
     private static class Worker implements Runnable {
 
         private String name;
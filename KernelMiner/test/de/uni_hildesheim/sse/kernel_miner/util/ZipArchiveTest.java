@@ -1,5 +1,6 @@
 package de.uni_hildesheim.sse.kernel_miner.util;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -219,4 +220,59 @@ public class ZipArchiveTest {
         Assert.assertFalse(outsideFile.exists());
     }
     
+    @Test
+    public void testCopyAndExtractBinary() throws IOException {
+        File zipFile = new File(TESTDATA, "archive.zip");
+        ZipArchive archive = new ZipArchive(zipFile);
+        
+        // not valid UTF-8, so this has to be copied byte by byte
+        byte[] content = new byte[100000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 7);
+        }
+        File outsideFile = new File(TESTDATA, "testBinary.bin");
+        File extractedFile = new File(TESTDATA, "testBinaryExtracted.bin");
+        outsideFile.deleteOnExit();
+        extractedFile.deleteOnExit();
+        Files.copy(new ByteArrayInputStream(content), outsideFile);
+        
+        File insideFile = new File("testBinary.bin");
+        archive.copyFileToArchive(insideFile, outsideFile);
+        Assert.assertEquals(content.length, archive.getSize(insideFile));
+        
+        archive.extract(insideFile, extractedFile);
+        Assert.assertArrayEquals(content, java.nio.file.Files.readAllBytes(extractedFile.toPath()));
+        
+        archive.deleteFile(insideFile);
+        outsideFile.delete();
+        extractedFile.delete();
+    }
+    
+    @Test
+    public void testCopyNotExisting() throws IOException {
+        File zipFile = new File(TESTDATA, "archive.zip");
+        ZipArchive archive = new ZipArchive(zipFile);
+        
+        try {
+            archive.copyFileToArchive(new File("testCopy.txt"), new File(TESTDATA, "doesntExist.txt"));
+            Assert.fail("Expected exception");
+        } catch (FileNotFoundException e) {
+        }
+        Assert.assertFalse(archive.containsFile(new File("testCopy.txt")));
+    }
+    
+    @Test
+    public void testExtractNotExisting() throws IOException {
+        File zipFile = new File(TESTDATA, "archive.zip");
+        ZipArchive archive = new ZipArchive(zipFile);
+        
+        File outsideFile = new File(TESTDATA, "testExtract.txt");
+        try {
+            archive.extract(new File("doesntExist.txt"), outsideFile);
+            Assert.fail("Expected exception");
+        } catch (FileNotFoundException e) {
+        }
+        Assert.assertFalse(outsideFile.exists());
+    }
+    
 }
@@ -0,0 +1,129 @@
+package de.uni_hildesheim.sse.kernel_miner.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ZipArchiveWriterTest {
+    
+    private File zipFile;
+    
+    @Before
+    public void setUp() throws IOException {
+        zipFile = File.createTempFile("writer", ".zip");
+        zipFile.delete();
+    }
+    
+    @After
+    public void tearDown() {
+        zipFile.delete();
+    }
+    
+    @Test
+    public void testWrite() throws IOException {
+        ZipArchive archive = new ZipArchive(zipFile);
+        ZipArchiveWriter writer = new ZipArchiveWriter(archive, 60000);
+        
+        File toMove = File.createTempFile("toMove", ".txt");
+        Files.writeFile(toMove, "moved content\n");
+        
+        final AtomicInteger committed = new AtomicInteger();
+        Runnable callback = new Runnable() {
+            
+            @Override
+            public void run() {
+                committed.incrementAndGet();
+            }
+        };
+        
+        writer.writeFile(new File("a.txt"), "content a\n", callback);
+        writer.writeFile(new File("dir/b.txt"), "content b\n", callback);
+        writer.moveFileToArchive(new File("c.txt"), toMove);
+        // overwritten by the later entry
+        writer.writeFile(new File("a.txt"), "new content a\n");
+        writer.close();
+        
+        Assert.assertEquals(2, committed.get());
+        Assert.assertFalse(toMove.exists());
+        Assert.assertTrue(zipFile.isFile());
+        
+        Assert.assertEquals("new content a\n", archive.readFile(new File("a.txt")));
+        Assert.assertEquals("content b\n", archive.readFile(new File("dir/b.txt")));
+        Assert.assertEquals("moved content\n", archive.readFile(new File("c.txt")));
+        archive.sync();
+    }
+    
+    @Test(timeout = 60000)
+    public void testMoreFilesThanQueue() throws IOException {
+        ZipArchive archive = new ZipArchive(zipFile);
+        ZipArchiveWriter writer = new ZipArchiveWriter(archive, 60000);
+        
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("ZipArchiveWriterThread")) {
+                // must not keep the JVM alive
+                Assert.assertTrue(thread.isDaemon());
+            }
+        }
+        
+        // the producer waits while the queue is full, instead of failing
+        for (int i = 0; i < 1000; i++) {
+            writer.writeFile(new File("file" + i + ".txt"), "content " + i + "\n");
+        }
+        writer.close();
+        
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals("content " + i + "\n", archive.readFile(new File("file" + i + ".txt")));
+        }
+        archive.sync();
+    }
+    
+    @Test(timeout = 10000)
+    public void testCheckpoint() throws IOException, InterruptedException {
+        ZipArchive archive = new ZipArchive(zipFile);
+        ZipArchiveWriter writer = new ZipArchiveWriter(archive, 0);
+        
+        final AtomicInteger committed = new AtomicInteger();
+        writer.writeFile(new File("a.txt"), "content a\n", new Runnable() {
+            
+            @Override
+            public void run() {
+                committed.incrementAndGet();
+            }
+        });
+        
+        // the callback is run after the checkpoint, without closing the writer
+        while (committed.get() == 0) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(zipFile.isFile());
+        
+        writer.close();
+        Assert.assertEquals(1, committed.get());
+    }
+    
+    @Test
+    public void testFailure() throws IOException {
+        ZipArchive archive = new ZipArchive(zipFile);
+        ZipArchiveWriter writer = new ZipArchiveWriter(archive, 60000);
+        
+        writer.moveFileToArchive(new File("missing.txt"), new File("doesntExist.txt"));
+        writer.writeFile(new File("a.txt"), "content a\n");
+        
+        try {
+            writer.close();
+            Assert.fail("Expected exception");
+        } catch (IOException e) {
+        }
+        
+        // the other files are still written
+        Assert.assertEquals("content a\n", archive.readFile(new File("a.txt")));
+        Assert.assertFalse(archive.containsFile(new File("missing.txt")));
+        archive.sync();
+    }
+    
+}
@@ -0,0 +1,53 @@
+package de.uni_hildesheim.sse.kernel_miner.util.logic;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FormulaFactoryTest {
+    
+    @Test
+    public void testSameInstances() {
+        FormulaFactory factory = new FormulaFactory();
+        
+        Formula f1 = factory.and(factory.variable("A"), factory.not(factory.variable("B")));
+        Formula f2 = factory.and(factory.variable("A"), factory.not(factory.variable("B")));
+        Formula f3 = factory.or(factory.variable("A"), factory.not(factory.variable("B")));
+        
+        Assert.assertSame(f1, f2);
+        Assert.assertNotSame(f1, f3);
+        Assert.assertNotEquals(f1, f3);
+        Assert.assertSame(factory.variable("A"), ((Conjunction) f1).getLeft());
+        Assert.assertSame(((Conjunction) f1).getRight(), ((Disjunction) f3).getRight());
+        Assert.assertEquals("(A && !B)", f1.toString());
+        
+        // (A && !B), !B, (A || !B)
+        Assert.assertEquals(3, factory.getSize());
+    }
+    
+    @Test
+    public void testIntern() {
+        FormulaFactory factory = new FormulaFactory();
+        
+        Formula created = factory.or(factory.and(factory.variable("A"), factory.getTrue()),
+                factory.not(factory.getFalse()));
+        Formula external = new Disjunction(new Conjunction(new Variable("A"), new True()), new Negation(new False()));
+        
+        Assert.assertEquals(created, external);
+        Assert.assertSame(created, factory.intern(external));
+        Assert.assertSame(factory.intern(external), factory.intern(external));
+    }
+    
+    @Test
+    public void testClear() {
+        FormulaFactory factory = new FormulaFactory();
+        
+        Formula f1 = factory.not(factory.variable("A"));
+        factory.clear();
+        Formula f2 = factory.not(factory.variable("A"));
+        
+        Assert.assertNotSame(f1, f2);
+        Assert.assertEquals(f1, f2);
+        Assert.assertEquals(1, factory.getSize());
+    }
+    
+}
@@ -157,5 +157,21 @@ public class FormulaTest {
                 );
         Assert.assertFalse(f1.equals(f5));
     }
+    
+    @Test
+    public void testEqualsAndHashCode() {
+        Formula f1 = new Conjunction(new Disjunction(new Variable("A"), new Negation(new True())), new False());
+        Formula f2 = new Conjunction(new Disjunction(new Variable("A"), new Negation(new True())), new False());
+        Formula f3 = new Conjunction(new Disjunction(new Variable("A"), new Negation(new False())), new False());
+        Formula f4 = new Disjunction(new Disjunction(new Variable("A"), new Negation(new True())), new False());
+        
+        Assert.assertEquals(f1, f2);
+        Assert.assertEquals(f1.hashCode(), f2.hashCode());
+        Assert.assertNotEquals(f1, f3);
+        Assert.assertNotEquals(f1, f4);
+        Assert.assertNotEquals(f1.hashCode(), f4.hashCode());
+        Assert.assertNotEquals(new Negation(new Variable("A")), new Variable("A"));
+        Assert.assertEquals(new Variable("A").hashCode(), new Variable("A").hashCode());
+    }
 
 }
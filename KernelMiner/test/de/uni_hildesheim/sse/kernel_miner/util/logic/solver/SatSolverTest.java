@@ -0,0 +1,105 @@
+package de.uni_hildesheim.sse.kernel_miner.util.logic.solver;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.uni_hildesheim.sse.kernel_miner.util.logic.Conjunction;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.Disjunction;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.Formula;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.Negation;
+import de.uni_hildesheim.sse.kernel_miner.util.logic.Variable;
+
+public class SatSolverTest {
+    
+    private static final File TESTDATA = new File("testdata/SatSolverTest");
+    
+    /*
+     * model.dimacs contains: (A -> B) && !(B && C)
+     */
+    
+    private static final Variable A = new Variable("CONFIG_A");
+    private static final Variable B = new Variable("CONFIG_B");
+    private static final Variable C = new Variable("CONFIG_C");
+    private static final Variable UNKNOWN = new Variable("CONFIG_UNKNOWN");
+    
+    @Test
+    public void testModelSatisfiable() throws SolverException {
+        SatSolver solver = new SatSolver(new File(TESTDATA, "model.dimacs"), "CONFIG_");
+        
+        Assert.assertTrue(solver.isSatisfiable());
+    }
+    
+    @Test
+    public void testFormulaWithModel() throws SolverException {
+        SatSolver solver = new SatSolver(new File(TESTDATA, "model.dimacs"), "CONFIG_");
+        
+        Assert.assertTrue(solver.isSatisfiable(A, null));
+        Assert.assertTrue(solver.isSatisfiable(new Conjunction(A, B), null));
+        Assert.assertFalse(solver.isSatisfiable(new Conjunction(A, new Negation(B)), null));
+        Assert.assertFalse(solver.isSatisfiable(new Conjunction(A, C), null));
+        Assert.assertTrue(solver.isSatisfiable(new Disjunction(new Conjunction(A, C), new Negation(B)), null));
+    }
+    
+    @Test
+    public void testUnknownVariables() throws SolverException {
+        SatSolver solver = new SatSolver(new File(TESTDATA, "model.dimacs"), "CONFIG_");
+        
+        Assert.assertTrue(solver.isSatisfiable(new Conjunction(A, UNKNOWN), true));
+        Assert.assertFalse(solver.isSatisfiable(new Conjunction(A, UNKNOWN), false));
+        // unknown variables of previous checks must not be remembered
+        Assert.assertTrue(solver.isSatisfiable(new Conjunction(A, UNKNOWN), true));
+        Assert.assertFalse(solver.isSatisfiable(new Conjunction(A, UNKNOWN), false));
+        
+        try {
+            solver.isSatisfiable(UNKNOWN, null);
+            Assert.fail("Expected SolverException");
+        } catch (SolverException e) {
+            // expected
+        }
+    }
+    
+    @Test
+    public void testIncremental() throws SolverException {
+        SatSolver solver = new SatSolver(new File(TESTDATA, "model.dimacs"), "CONFIG_");
+        
+        Formula[] formulas = {
+            A,
+            new Conjunction(A, new Negation(B)),
+            new Conjunction(A, B),
+            new Conjunction(A, C),
+            new Disjunction(new Conjunction(A, C), new Conjunction(B, new Negation(C))),
+            new Conjunction(new Disjunction(A, C), new Disjunction(new Negation(B), new Negation(A))),
+            new Negation(A),
+        };
+        
+        // run twice, to check that retracted formulas do not influence later checks
+        for (int run = 0; run < 2; run++) {
+            for (Formula formula : formulas) {
+                Assert.assertEquals(formula.toString(), solver.isSatisfiable(formula, null),
+                        solver.isSatisfiableIncremental(formula, null));
+            }
+        }
+    }
+    
+    @Test
+    public void testIncrementalUnknownVariables() throws SolverException {
+        SatSolver solver = new SatSolver(new File(TESTDATA, "model.dimacs"), "CONFIG_");
+        
+        Assert.assertFalse(solver.isSatisfiableIncremental(new Conjunction(A, UNKNOWN), false));
+        Assert.assertTrue(solver.isSatisfiableIncremental(new Conjunction(A, UNKNOWN), true));
+        Assert.assertFalse(solver.isSatisfiableIncremental(new Conjunction(A, UNKNOWN), false));
+        Assert.assertTrue(solver.isSatisfiableIncremental(new Conjunction(A, new Negation(UNKNOWN)), false));
+    }
+    
+    @Test
+    public void testIncrementalWithoutModel() throws SolverException {
+        SatSolver solver = new SatSolver();
+        
+        Assert.assertFalse(solver.isSatisfiableIncremental(new Conjunction(A, new Negation(A)), true));
+        Assert.assertTrue(solver.isSatisfiableIncremental(new Conjunction(A, B), true));
+        Assert.assertTrue(solver.isSatisfiableIncremental(new Negation(A), true));
+    }
+    
+}
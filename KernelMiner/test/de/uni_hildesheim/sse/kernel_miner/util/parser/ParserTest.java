@@ -153,6 +153,36 @@ public class ParserTest {
         Assert.assertEquals(11, cache.getNumVariables());
     }
     
+    @Test
+    public void testAssociativity() throws ExpressionFormatException {
+        VariableCache cache = new VariableCache();
+        Parser<Formula> parser = new Parser<>(new CStyleBooleanGrammar(cache));
+        
+        Assert.assertEquals("(A && (B || C))", parser.parse("A && B || C").toString());
+        Assert.assertEquals("((!A || B) && !!C)", parser.parse("(!A || B) && !!C").toString());
+        Assert.assertEquals("(A && (!B || C))", parser.parse("A && !B || C").toString());
+    }
+    
+    @Test
+    public void testDeepNesting() throws ExpressionFormatException {
+        VariableCache cache = new VariableCache();
+        Parser<Formula> parser = new Parser<>(new CStyleBooleanGrammar(cache));
+        
+        int depth = 5000;
+        StringBuilder str = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            str.append("(VAR_").append(i).append(" || ");
+        }
+        str.append("A");
+        for (int i = 0; i < depth; i++) {
+            str.append(")");
+        }
+        
+        Formula f = parser.parse(str.toString());
+        assertVariable(assertDisjunction(f)[0], "VAR_0");
+        Assert.assertEquals(depth + 1, cache.getNumVariables());
+    }
+    
     @Test
     public void testMalformedBrackets() {
         VariableCache cache = new VariableCache();
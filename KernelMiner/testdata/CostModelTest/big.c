@@ -0,0 +1,7 @@
+#include <linux/a.h>
+#include <linux/b.h>
+# include "c.h"
+
+int a;
+int b;
+int c;
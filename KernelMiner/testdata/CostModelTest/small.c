@@ -0,0 +1,3 @@
+#include <linux/a.h>
+
+int a;